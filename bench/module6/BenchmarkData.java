@@ -0,0 +1,134 @@
+package module6;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.marker.SimplePolygonMarker;
+import de.fhpotsdam.unfolding.providers.Google;
+import processing.core.PApplet;
+
+/**
+ * Synthetic inputs shared by the JMH benchmarks: random quakes and cities,
+ * a grid of square countries and a map which is never drawn. Inputs only
+ * depend on their seed, so runs compared against a baseline measure the
+ * same data.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class BenchmarkData {
+
+	/** Screen area of the map, as in EarthquakeCityMap */
+	public static final int MAP_X = 200, MAP_Y = 50, MAP_WIDTH = 650, MAP_HEIGHT = 600;
+
+	private static final String[] AGES = { "Past Hour", "Past Day", "Past Week", "Past Month" };
+
+	// Time of the newest synthetic quake
+	private static final long LATEST = 1438977084915L;
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * @param random
+	 *            The random numbers used.
+	 * @return a location uniformly distributed over the sphere.
+	 */
+	public static Location randomLocation(Random random) {
+		double lat = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+		return new Location((float) lat, random.nextFloat() * 360 - 180);
+	}
+
+	/**
+	 * @param random
+	 *            The random numbers used.
+	 * @param id
+	 *            The number of the quake, for its feed id.
+	 * @return a quake feature as read from a feed: magnitude 2.5 to 7.5,
+	 *         depth 0 to 600 km, over the last 30 days.
+	 */
+	public static PointFeature randomQuake(Random random, int id) {
+		PointFeature feature = new PointFeature(randomLocation(random));
+		feature.setId("bench" + id);
+		float magnitude = 2.5f + random.nextInt(50) / 10f;
+		feature.putProperty("magnitude", magnitude);
+		feature.putProperty("depth", random.nextInt(6000) / 10f);
+		feature.putProperty("title", "M " + magnitude + " - Benchmark " + id);
+		long age = (long) (random.nextDouble() * 30 * VisibilityEngine.DAY);
+		feature.putProperty("age", AGES[age < VisibilityEngine.HOUR ? 0
+				: age < VisibilityEngine.DAY ? 1 : age < 7 * VisibilityEngine.DAY ? 2 : 3]);
+		feature.putProperty("time", LATEST - age);
+		return feature;
+	}
+
+	/**
+	 * @param count
+	 *            The number of quakes.
+	 * @param store
+	 *            The store the quakes are added to.
+	 * @param seed
+	 *            The seed of the random numbers.
+	 * @return the markers of random quakes, in the ocean.
+	 */
+	public static List<Marker> quakeMarkers(int count, QuakeStore store, long seed) {
+		Random random = new Random(seed);
+		List<Marker> quakes = new ArrayList<Marker>(count);
+		for (int i = 0; i < count; i++)
+			quakes.add(new OceanQuakeMarker(randomQuake(random, i), store));
+		return quakes;
+	}
+
+	/**
+	 * @param count
+	 *            The number of cities.
+	 * @param seed
+	 *            The seed of the random numbers.
+	 * @return the markers of random cities.
+	 */
+	public static List<Marker> cityMarkers(int count, long seed) {
+		Random random = new Random(seed);
+		List<Marker> cities = new ArrayList<Marker>(count);
+		for (int i = 0; i < count; i++)
+			cities.add(new CityMarker(randomLocation(random)));
+		return cities;
+	}
+
+	/**
+	 * @param columns
+	 *            The number of countries across.
+	 * @param rows
+	 *            The number of countries from 60S to 60N.
+	 * @return square country markers tiling the land between 60S and 60N,
+	 *         with a "name" property; the rest of the world is ocean.
+	 */
+	public static List<Marker> gridCountries(int columns, int rows) {
+		List<Marker> countries = new ArrayList<Marker>(columns * rows);
+		float width = 360f / columns, height = 120f / rows;
+		for (int row = 0; row < rows; row++)
+			for (int col = 0; col < columns; col++) {
+				float lat = -60 + row * height, lon = -180 + col * width;
+				SimplePolygonMarker country = new SimplePolygonMarker(Arrays.asList(new Location(lat, lon),
+						new Location(lat, lon + width), new Location(lat + height, lon + width),
+						new Location(lat + height, lon)), new HashMap<String, Object>());
+				country.setProperty("name", "Country " + (row * columns + col));
+				countries.add(country);
+			}
+		return countries;
+	}
+
+	/**
+	 * @return a world map in the screen area of the sketch, for projections
+	 *         only: it has an offscreen Java2D renderer and is never drawn.
+	 */
+	public static UnfoldingMap offscreenMap() {
+		PApplet applet = new PApplet();
+		applet.g = applet.createGraphics(MAP_X + MAP_WIDTH, MAP_Y + MAP_HEIGHT);
+		return new UnfoldingMap(applet, MAP_X, MAP_Y, MAP_WIDTH, MAP_HEIGHT, new Google.GoogleMapProvider());
+	}
+}
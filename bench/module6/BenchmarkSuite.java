@@ -0,0 +1,129 @@
+package module6;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the hot paths (feed parsing and polling,
+ * classification, visibility, threat areas, city queries, picking, sorting
+ * and index loading), writes their scores to a CSV file and compares them
+ * with the scores of a baseline run, written the same way. Scores are
+ * average times, so a higher score than the baseline is a regression; the
+ * exit status is 1 if any benchmark regressed by more than the threshold.
+ * <p>
+ * Usage:
+ * <code>BenchmarkSuite [-out results.csv] [-baseline baseline.csv] [-threshold percent] [regex...]</code>
+ * where the regular expressions select benchmarks (all by default), e.g.
+ * <code>PickBenchmark</code> or <code>.*parse.*</code>.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class BenchmarkSuite {
+
+	private static final String HEADER = "benchmark,params,score,error,unit";
+
+	public static void main(String[] args) throws Exception {
+		String out = "benchmark-results.csv", baseline = null;
+		double threshold = 10;
+		ChainedOptionsBuilder options = new OptionsBuilder().shouldFailOnError(true);
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-out") && i + 1 < args.length)
+				out = args[++i];
+			else if (args[i].equals("-baseline") && i + 1 < args.length)
+				baseline = args[++i];
+			else if (args[i].equals("-threshold") && i + 1 < args.length)
+				threshold = Double.parseDouble(args[++i]);
+			else if (args[i].startsWith("-")) {
+				System.err.println("Usage: BenchmarkSuite [-out results.csv] [-baseline baseline.csv] "
+						+ "[-threshold percent] [regex...]");
+				System.exit(2);
+			} else
+				options.include(args[i]);
+		}
+
+		// The baseline is read before the run, as the results may be written
+		// over it
+		Map<String, Double> before = baseline == null ? null : load(new File(baseline));
+
+		Collection<RunResult> results = new Runner(options.build()).run();
+
+		List<String> rows = new ArrayList<String>();
+		rows.add(HEADER);
+		for (RunResult result : results) {
+			Result score = result.getPrimaryResult();
+			rows.add(String.format(Locale.ROOT, "%s,%s,%.3f,%.3f,%s", result.getParams().getBenchmark(),
+					params(result.getParams()), score.getScore(), score.getScoreError(), score.getScoreUnit()));
+		}
+		Files.write(new File(out).toPath(), rows, StandardCharsets.UTF_8);
+		System.out.println("Results written to " + out);
+
+		if (before != null && compare(before, load(new File(out)), threshold) > 0)
+			System.exit(1);
+	}
+
+	// Parameters of a benchmark as name=value pairs sorted by name, separated
+	// by semicolons, so they do not depend on the order JMH lists them in
+	private static String params(BenchmarkParams params) {
+		StringBuilder text = new StringBuilder();
+		for (String key : new TreeSet<String>(params.getParamsKeys())) {
+			if (text.length() > 0)
+				text.append(';');
+			text.append(key).append('=').append(params.getParam(key));
+		}
+		return text.toString();
+	}
+
+	// Scores of a results file, by benchmark and parameters
+	private static Map<String, Double> load(File file) throws IOException {
+		Map<String, Double> scores = new LinkedHashMap<String, Double>();
+		for (String row : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			String[] columns = row.split(",", -1);
+			if (row.equals(HEADER) || columns.length < 3)
+				continue;
+			scores.put(columns[0] + " " + columns[1], Double.parseDouble(columns[2]));
+		}
+		return scores;
+	}
+
+	// Prints the change of every score against the baseline, and returns the
+	// number of scores slower by more than the threshold, in percent
+	private static int compare(Map<String, Double> baseline, Map<String, Double> current, double threshold) {
+		int regressions = 0;
+		PrintWriter report = new PrintWriter(System.out, true);
+		for (Map.Entry<String, Double> entry : current.entrySet()) {
+			Double before = baseline.get(entry.getKey());
+			if (before == null) {
+				report.printf(Locale.ROOT, "%-70s %12.3f  (new)%n", entry.getKey(), entry.getValue());
+				continue;
+			}
+			double change = 100 * (entry.getValue() - before) / before;
+			boolean regressed = change > threshold;
+			if (regressed)
+				regressions++;
+			report.printf(Locale.ROOT, "%-70s %12.3f %+8.1f%%%s%n", entry.getKey(), entry.getValue(), change,
+					regressed ? "  REGRESSION" : "");
+		}
+		for (String key : baseline.keySet())
+			if (!current.containsKey(key))
+				report.printf(Locale.ROOT, "%-70s %12s  (missing)%n", key, "-");
+		report.printf(Locale.ROOT, "%d regression(s) over %.1f%%%n", regressions, threshold);
+		return regressions;
+	}
+}
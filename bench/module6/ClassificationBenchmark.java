@@ -0,0 +1,95 @@
+package module6;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/**
+ * Classifies random quakes by country (land or ocean): the linear scan with
+ * isInCountry over every country, the polygon grid of CountryIndex, and the
+ * country raster, one quake at a time and through the parallel classifier.
+ * Countries are a grid of squares between 60S and 60N.
+ *
+ * @author Luis Vsquez-Pea
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ClassificationBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int quakes;
+
+	@Param({ "200" })
+	public int countries;
+
+	private List<Marker> countryMarkers;
+	private CountryIndex index;
+	private CountryRaster raster;
+	private List<PointFeature> features;
+
+	@Setup
+	public void createData() {
+		// Twice as many countries across as from south to north
+		int rows = Math.max(1, (int) Math.round(Math.sqrt(countries / 2.0)));
+		countryMarkers = BenchmarkData.gridCountries(countries / rows, rows);
+		index = new CountryIndex(countryMarkers);
+		raster = CountryRaster.build(index);
+
+		Random random = new Random(42);
+		features = new ArrayList<PointFeature>(quakes);
+		for (int i = 0; i < quakes; i++)
+			features.add(BenchmarkData.randomQuake(random, i));
+	}
+
+	@Benchmark
+	public int isInCountry() {
+		int land = 0;
+		for (PointFeature quake : features)
+			if (CountryIndex.findCountryLinear(countryMarkers, quake.getLocation()) != CountryIndex.NO_COUNTRY)
+				land++;
+		return land;
+	}
+
+	@Benchmark
+	public int countryIndex() {
+		int land = 0;
+		for (PointFeature quake : features)
+			if (index.findCountry(quake.getLocation()) != CountryIndex.NO_COUNTRY)
+				land++;
+		return land;
+	}
+
+	@Benchmark
+	public int countryRaster() {
+		int land = 0;
+		for (PointFeature quake : features)
+			if (raster.findCountry(quake.getLocation()) != CountryIndex.NO_COUNTRY)
+				land++;
+		return land;
+	}
+
+	@Benchmark
+	public int[] classifyParallel() {
+		return QuakeClassifier.classify(features, raster);
+	}
+}
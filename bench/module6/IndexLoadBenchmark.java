@@ -0,0 +1,66 @@
+package module6;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loads the magnitude and time indexes of a feed, as the map does when it
+ * creates the quake markers: every quake is added in feed order, then the
+ * first read merges the quakes added into the sorted arrays. Magnitudes and
+ * times are random, as the ones of BenchmarkData.randomQuake.
+ *
+ * @author Luis Vsquez-Pea
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IndexLoadBenchmark {
+
+	@Param({ "100000", "500000" })
+	public int quakes;
+
+	private float[] magnitudes;
+	private long[] times;
+
+	@Setup
+	public void createQuakes() {
+		Random random = new Random(42);
+		magnitudes = new float[quakes];
+		times = new long[quakes];
+		for (int i = 0; i < quakes; i++) {
+			magnitudes[i] = 2.5f + random.nextInt(50) / 10f;
+			times[i] = -(long) (random.nextDouble() * 30 * VisibilityEngine.DAY);
+		}
+	}
+
+	@Benchmark
+	public int loadMagnitudeIndex() {
+		MagnitudeIndex index = new MagnitudeIndex();
+		for (int i = 0; i < quakes; i++)
+			index.add(i, magnitudes[i]);
+		return index.get(0);
+	}
+
+	@Benchmark
+	public int loadTimeIndex() {
+		TimeIndex index = new TimeIndex();
+		for (int i = 0; i < quakes; i++)
+			index.add(i, times[i]);
+		return index.get(0);
+	}
+}
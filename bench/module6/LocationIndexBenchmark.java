@@ -0,0 +1,87 @@
+package module6;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/**
+ * Finds the cities within the threat circles of random quakes of magnitude 4
+ * to 7: through the city index, through the loop over every city marker
+ * which the index replaced, and the build of the index. Cities are spread
+ * uniformly over the sphere.
+ *
+ * @author Luis Vsquez-Pea
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LocationIndexBenchmark {
+
+	// Threat circles queried by every invocation
+	private static final int QUERIES = 200;
+
+	@Param({ "1000", "10000", "100000" })
+	public int cities;
+
+	private List<Marker> cityMarkers;
+	private LocationIndex index;
+	private Location[] centers = new Location[QUERIES];
+	private double[] radii = new double[QUERIES];
+
+	@Setup
+	public void createCities() {
+		cityMarkers = BenchmarkData.cityMarkers(cities, 43);
+		index = new LocationIndex(cityMarkers);
+
+		Random random = new Random(42);
+		for (int q = 0; q < QUERIES; q++) {
+			centers[q] = BenchmarkData.randomLocation(random);
+			radii[q] = QuakeStore.threatCircle(4 + 3 * random.nextFloat());
+		}
+	}
+
+	@Benchmark
+	public int queryIndex() {
+		int found = 0;
+		for (int q = 0; q < QUERIES; q++) {
+			BitSet result = new BitSet(cities);
+			index.query(centers[q], radii[q], result);
+			found += result.cardinality();
+		}
+		return found;
+	}
+
+	@Benchmark
+	public int queryLinear() {
+		int found = 0;
+		for (int q = 0; q < QUERIES; q++)
+			for (Marker city : cityMarkers)
+				if (city.getDistanceTo(centers[q]) <= radii[q])
+					found++;
+		return found;
+	}
+
+	@Benchmark
+	public LocationIndex buildIndex() {
+		return new LocationIndex(cityMarkers);
+	}
+}
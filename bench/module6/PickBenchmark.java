@@ -0,0 +1,103 @@
+package module6;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/**
+ * Finds the marker under the mouse cursor, as selectMarkerIfHover does, for
+ * a fixed set of random cursor positions on the map: through the pick grid,
+ * through the loop over every visible marker which the grid replaced, and
+ * the rebuild of the grid after the visibility of the markers changed.
+ *
+ * @author Luis Vsquez-Pea
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PickBenchmark {
+
+	// Cursor positions picked by every invocation
+	private static final int CURSORS = 256;
+
+	@Param({ "1000", "10000", "100000" })
+	public int quakes;
+
+	@Param({ "1000" })
+	public int cities;
+
+	private List<Marker> quakeMarkers, cityMarkers;
+	private UnfoldingMap map;
+	private PickGrid pickGrid;
+	private int version;
+	private float[] xs = new float[CURSORS], ys = new float[CURSORS];
+
+	@Setup
+	public void createMarkers() {
+		quakeMarkers = BenchmarkData.quakeMarkers(quakes, new QuakeStore(quakes), 42);
+		cityMarkers = BenchmarkData.cityMarkers(cities, 43);
+		map = BenchmarkData.offscreenMap();
+
+		pickGrid = new PickGrid(BenchmarkData.MAP_X, BenchmarkData.MAP_Y, BenchmarkData.MAP_WIDTH,
+				BenchmarkData.MAP_HEIGHT);
+		pickGrid.update(map, version, cityMarkers, quakeMarkers);
+
+		Random random = new Random(44);
+		for (int i = 0; i < CURSORS; i++) {
+			xs[i] = BenchmarkData.MAP_X + random.nextFloat() * BenchmarkData.MAP_WIDTH;
+			ys[i] = BenchmarkData.MAP_Y + random.nextFloat() * BenchmarkData.MAP_HEIGHT;
+		}
+	}
+
+	@Benchmark
+	public int pickGrid() {
+		int found = 0;
+		for (int i = 0; i < CURSORS; i++)
+			if (pickGrid.pick(xs[i], ys[i]) != null)
+				found++;
+		return found;
+	}
+
+	@Benchmark
+	public int pickLinear() {
+		int found = 0;
+		for (int i = 0; i < CURSORS; i++)
+			if (pickLinear(cityMarkers, xs[i], ys[i]) != null || pickLinear(quakeMarkers, xs[i], ys[i]) != null)
+				found++;
+		return found;
+	}
+
+	// The first visible marker containing the position, as the loops of
+	// selectMarkerIfHover
+	private Marker pickLinear(List<Marker> markers, float x, float y) {
+		for (Marker marker : markers)
+			if (!marker.isHidden() && marker.isInside(map, x, y))
+				return marker;
+		return null;
+	}
+
+	@Benchmark
+	public PickGrid rebuildGrid() {
+		// A new visibility version makes the grid project every marker again
+		pickGrid.update(map, ++version, cityMarkers, quakeMarkers);
+		return pickGrid;
+	}
+}
@@ -0,0 +1,79 @@
+package module6;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/**
+ * Orders quakes by magnitude: sorting a copy of the marker list with
+ * EarthquakeMarker.compareTo, as sortAndPrint used to, against the top
+ * quakes of the magnitude index, and building the index from scratch.
+ *
+ * @author Luis Vsquez-Pea
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SortBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int quakes;
+
+	@Param({ "20" })
+	public int top;
+
+	private List<EarthquakeMarker> quakeMarkers;
+	private MagnitudeIndex magnitudeIndex;
+	private BitSet all;
+
+	@Setup
+	public void createQuakes() {
+		quakeMarkers = new ArrayList<EarthquakeMarker>(quakes);
+		for (Marker marker : BenchmarkData.quakeMarkers(quakes, new QuakeStore(quakes), 42))
+			quakeMarkers.add((EarthquakeMarker) marker);
+		magnitudeIndex = buildIndex();
+		all = new BitSet(quakes);
+		all.set(0, quakes);
+	}
+
+	@Benchmark
+	public List<EarthquakeMarker> sortCompareTo() {
+		List<EarthquakeMarker> sorted = new ArrayList<EarthquakeMarker>(quakeMarkers);
+		Collections.sort(sorted, Collections.reverseOrder());
+		return sorted.subList(0, Math.min(top, sorted.size()));
+	}
+
+	@Benchmark
+	public BitSet topK() {
+		BitSet result = new BitSet(quakes);
+		magnitudeIndex.topK(top, all, result);
+		return result;
+	}
+
+	@Benchmark
+	public MagnitudeIndex buildIndex() {
+		MagnitudeIndex index = new MagnitudeIndex();
+		for (EarthquakeMarker quake : quakeMarkers)
+			index.add(quake.getIndex(), quake.getMagnitude());
+		return index;
+	}
+}
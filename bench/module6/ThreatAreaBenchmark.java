@@ -0,0 +1,82 @@
+package module6;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.geo.Location;
+
+/**
+ * Computes the threat areas of random quakes, which replaced the bisection
+ * of the threat circle in draw(), and projects them on a map. Magnitudes
+ * range up to 9, so areas wrapping around the antimeridian or a pole are
+ * included.
+ *
+ * @author Luis Vsquez-Pea
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ThreatAreaBenchmark {
+
+	private static final Location CENTER = new Location(20, 0);
+
+	@Param({ "100", "1000" })
+	public int quakes;
+
+	private Location[] centers;
+	private double[] radii;
+	private ThreatArea[] areas;
+	private UnfoldingMap map;
+	private int zoom;
+
+	@Setup
+	public void createQuakes() {
+		Random random = new Random(42);
+		centers = new Location[quakes];
+		radii = new double[quakes];
+		areas = new ThreatArea[quakes];
+		for (int i = 0; i < quakes; i++) {
+			centers[i] = BenchmarkData.randomLocation(random);
+			radii[i] = QuakeStore.threatCircle(4 + 5 * random.nextFloat());
+			areas[i] = new ThreatArea(centers[i], radii[i]);
+		}
+		map = BenchmarkData.offscreenMap();
+	}
+
+	@Benchmark
+	public int computeAreas() {
+		int pieces = 0;
+		for (int i = 0; i < quakes; i++)
+			pieces += new ThreatArea(centers[i], radii[i]).getPieces().size();
+		return pieces;
+	}
+
+	@Benchmark
+	public int projectAreas() {
+		// Every invocation zooms, so the areas are projected again
+		zoom = zoom % 3 + 2;
+		map.zoomAndPanTo(zoom, CENTER);
+		MapView view = MapView.of(map);
+		int projected = 0;
+		for (ThreatArea area : areas)
+			if (area.project(map, view))
+				projected++;
+		return projected;
+	}
+}
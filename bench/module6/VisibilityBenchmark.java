@@ -0,0 +1,97 @@
+package module6;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/**
+ * Applies filter changes of the map controls to the visibility of the
+ * markers, as the controls do: every invocation changes one filter back and
+ * forth and updates the visibility engine, which sets the hidden flag of the
+ * markers whose visibility changed.
+ *
+ * @author Luis Vsquez-Pea
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class VisibilityBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int quakes;
+
+	@Param({ "10000" })
+	public int cities;
+
+	private List<Marker> quakeMarkers;
+	private VisibilityEngine visibility;
+	private boolean toggle;
+
+	@Setup
+	public void createEngine() {
+		QuakeStore store = new QuakeStore(quakes);
+		quakeMarkers = BenchmarkData.quakeMarkers(quakes, store, 42);
+		MagnitudeIndex magnitudeIndex = new MagnitudeIndex();
+		TimeIndex timeIndex = new TimeIndex();
+		for (Marker marker : quakeMarkers) {
+			EarthquakeMarker quake = (EarthquakeMarker) marker;
+			magnitudeIndex.add(quake.getIndex(), quake.getMagnitude());
+			timeIndex.add(quake.getIndex(), quake.getTime());
+		}
+
+		List<Marker> cityMarkers = BenchmarkData.cityMarkers(cities, 43);
+		visibility = new VisibilityEngine(quakeMarkers, magnitudeIndex, timeIndex, cityMarkers,
+				new LocationIndex(cityMarkers));
+		for (byte age = QuakeStore.AGE_PAST_HOUR; age <= QuakeStore.AGE_PAST_MONTH; age++)
+			visibility.setAgeShown(age, true);
+		visibility.update();
+	}
+
+	@Benchmark
+	public boolean ageFilter() {
+		toggle = !toggle;
+		visibility.setAgeShown(QuakeStore.AGE_PAST_MONTH, toggle);
+		return visibility.update();
+	}
+
+	@Benchmark
+	public boolean timeWindow() {
+		toggle = !toggle;
+		if (toggle) {
+			long latest = visibility.getLatestTime();
+			visibility.setTimeWindow(latest - 3 * VisibilityEngine.DAY, latest - 2 * VisibilityEngine.DAY);
+		} else
+			visibility.clearTimeWindow();
+		return visibility.update();
+	}
+
+	@Benchmark
+	public boolean topCount() {
+		toggle = !toggle;
+		visibility.setTopCount(toggle ? 20 : VisibilityEngine.ALL);
+		return visibility.update();
+	}
+
+	@Benchmark
+	public boolean focus() {
+		toggle = !toggle;
+		visibility.setFocus(toggle ? (CommonMarker) quakeMarkers.get(0) : null);
+		return visibility.update();
+	}
+}
@@ -0,0 +1,127 @@
+package parsing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import module6.BenchmarkData;
+
+/**
+ * Polls a synthetic feed served by RecordedFeedServer on localhost, as the
+ * map polls its feeds: a poll of an updated feed downloads, parses and
+ * diffs the whole feed, a poll of an unchanged feed is answered with 304 Not
+ * Modified. The feed alternates between two recordings, the second one with
+ * one entry in 50 updated and one in 100 replaced by a new event.
+ *
+ * @author Luis Vsquez-Pea
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FeedPollerBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int rows;
+
+	private File[] recordings;
+	private RecordedFeedServer server;
+	private FeedPoller poller;
+	private int recording;
+
+	@Setup
+	public void startServer() throws IOException {
+		Random random = new Random(42);
+		Location[] locations = new Location[rows];
+		float[] magnitudes = new float[rows];
+		int[] seconds = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			locations[i] = BenchmarkData.randomLocation(random);
+			magnitudes[i] = 2.5f + random.nextInt(50) / 10f;
+			seconds[i] = random.nextInt(30 * 86400);
+		}
+
+		recordings = new File[2];
+		for (int r = 0; r < recordings.length; r++) {
+			recordings[r] = File.createTempFile("quakes" + r, ".atom");
+			writeFeed(recordings[r], locations, magnitudes, seconds, r);
+		}
+
+		server = new RecordedFeedServer(0, recordings);
+		server.start();
+		poller = new FeedPoller(server.getURL("/all_month.atom"), 60);
+		// The first poll reads the whole feed, as the seeding would
+		poller.pollOnce();
+		while (poller.nextChanges() != null)
+			;
+	}
+
+	// Writes a recording of the feed: the second one updates the magnitude of
+	// one entry in 50 and replaces one in 100 by a new event
+	private static void writeFeed(File file, Location[] locations, float[] magnitudes, int[] seconds, int revision)
+			throws IOException {
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+		out.println("<?xml version=\"1.0\"?>");
+		out.println("<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:georss=\"http://www.georss.org/georss\">"
+				+ "<title>Benchmark</title><updated>2015-08-07T20:00:00Z</updated>");
+		for (int i = 0; i < locations.length; i++) {
+			int id = revision > 0 && i % 100 == 99 ? locations.length + i : i;
+			float magnitude = revision > 0 && i % 50 == 0 ? magnitudes[i] + 0.1f : magnitudes[i];
+			int second = seconds[i];
+			String time = String.format("2015-07-%02d %02d:%02d:%02d", 1 + second / 86400, second / 3600 % 24,
+					second / 60 % 60, second % 60);
+			out.printf(Locale.ROOT,
+					"<entry><id>urn:earthquake-usgs-gov:bench:%d</id><title>M %.1f - Benchmark %d</title>"
+					+ "<updated>%sZ</updated><summary type=\"html\"><![CDATA[<dl><dt>Time</dt><dd>%s UTC</dd></dl>]]>"
+					+ "</summary><georss:point>%.4f %.4f</georss:point><georss:elev>%d</georss:elev>"
+					+ "<category label=\"Age\" term=\"Past Month\"/></entry>%n", id, magnitude, id,
+					time.replace(' ', 'T'), time, locations[i].getLat(), locations[i].getLon(), -1000 * (i % 600));
+		}
+		out.println("</feed>");
+		out.close();
+	}
+
+	@TearDown
+	public void stopServer() {
+		server.stop();
+		for (File file : recordings)
+			file.delete();
+	}
+
+	@Benchmark
+	public int pollUpdated() throws IOException {
+		// Every invocation serves the other recording, so the feed changed
+		recording = 1 - recording;
+		server.setRecording(recording);
+		poller.pollOnce();
+		int changed = 0;
+		FeedPoller.Changes changes;
+		while ((changes = poller.nextChanges()) != null)
+			changed += changes.inserted.size() + changes.updated.size() + changes.removed.size();
+		return changed;
+	}
+
+	@Benchmark
+	public boolean pollUnchanged() throws IOException {
+		return poller.pollOnce();
+	}
+}
@@ -0,0 +1,120 @@
+package parsing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import module6.BenchmarkData;
+import processing.core.PApplet;
+
+/**
+ * Parses synthetic earthquake feeds, airport and route files of a given
+ * number of rows. The files are written to temporary files once per trial,
+ * in the formats of the USGS Atom feed and of the OpenFlights data.
+ *
+ * @author Luis Vsquez-Pea
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParseFeedBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int rows;
+
+	private PApplet applet;
+	private File feed, airports, routes;
+
+	@Setup
+	public void writeFiles() throws IOException {
+		applet = new PApplet();
+		Random random = new Random(42);
+
+		feed = File.createTempFile("quakes", ".atom");
+		PrintWriter out = new PrintWriter(feed, "UTF-8");
+		out.println("<?xml version=\"1.0\"?>");
+		out.println("<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:georss=\"http://www.georss.org/georss\">"
+				+ "<title>Benchmark</title><updated>2015-08-07T20:00:00Z</updated>");
+		for (int i = 0; i < rows; i++) {
+			Location loc = BenchmarkData.randomLocation(random);
+			float magnitude = 2.5f + random.nextInt(50) / 10f;
+			int second = random.nextInt(30 * 86400);
+			String time = String.format("2015-07-%02d %02d:%02d:%02d", 1 + second / 86400, second / 3600 % 24,
+					second / 60 % 60, second % 60);
+			out.printf(Locale.ROOT,
+					"<entry><id>urn:earthquake-usgs-gov:bench:%d</id><title>M %.1f - Benchmark %d</title>"
+					+ "<updated>%sZ</updated><summary type=\"html\"><![CDATA[<dl><dt>Time</dt><dd>%s UTC</dd></dl>]]>"
+					+ "</summary><georss:point>%.4f %.4f</georss:point><georss:elev>%d</georss:elev>"
+					+ "<category label=\"Age\" term=\"Past Month\"/></entry>%n", i, magnitude, i,
+					time.replace(' ', 'T'), time, loc.getLat(), loc.getLon(), -random.nextInt(600000));
+		}
+		out.println("</feed>");
+		out.close();
+
+		airports = File.createTempFile("airports", ".dat");
+		out = new PrintWriter(airports, "UTF-8");
+		for (int i = 0; i < rows; i++) {
+			Location loc = BenchmarkData.randomLocation(random);
+			out.printf(Locale.ROOT, "%d,\"Airport %d\",\"City, %d\",\"Country\",\"A%02d\",\"BA%02d\",%.6f,%.6f,%d,0,\"U\"%n",
+					i + 1, i, i, i % 100, i % 100, loc.getLat(), loc.getLon(), random.nextInt(5000));
+		}
+		out.close();
+
+		routes = File.createTempFile("routes", ".dat");
+		out = new PrintWriter(routes, "UTF-8");
+		for (int i = 0; i < rows; i++) {
+			// One route in ten has an airport without identifier
+			String source = i % 10 == 0 ? "\\N" : String.valueOf(1 + random.nextInt(rows));
+			out.printf(Locale.ROOT, "2B,410,A%02d,%s,B%02d,%d,,0,CR2%n", i % 100, source, i % 100,
+					1 + random.nextInt(rows));
+		}
+		out.close();
+	}
+
+	@TearDown
+	public void deleteFiles() {
+		feed.delete();
+		airports.delete();
+		routes.delete();
+	}
+
+	@Benchmark
+	public Object parseEarthquake() {
+		return ParseFeed.parseEarthquake(applet, feed.getAbsolutePath());
+	}
+
+	@Benchmark
+	public Object parseEarthquakeDOM() {
+		return ParseFeed.parseEarthquakeDOM(applet, feed.getAbsolutePath());
+	}
+
+	@Benchmark
+	public Object parseAirports() {
+		return ParseFeed.parseAirports(applet, airports.getAbsolutePath());
+	}
+
+	@Benchmark
+	public Object parseRoutes() {
+		return ParseFeed.parseRoutes(applet, routes.getAbsolutePath());
+	}
+}
@@ -0,0 +1,149 @@
+package parsing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the USGS feed server, which FeedPollerBenchmark polls
+ * without network. It serves one of several recorded .atom files at any
+ * path, with ETag and Last-Modified validators, answers conditional
+ * requests with 304 Not Modified and gzips the response when asked to.
+ * Serving another recording simulates the feed being updated.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class RecordedFeedServer {
+
+	private HttpServer server;
+	private File[] recordings;
+	private volatile int current;
+
+	private volatile int requests, notModified;
+
+	/**
+	 * Construct a server for a sequence of recordings, starting at the first
+	 * one.
+	 *
+	 * @param port
+	 *            The local port, or 0 for any free port.
+	 * @param recordings
+	 *            The recorded feeds, in the order they are served.
+	 * @throws IOException
+	 *             if the port cannot be used.
+	 */
+	public RecordedFeedServer(int port, File... recordings) throws IOException {
+		this.recordings = recordings;
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	/**
+	 * Serves another recording from now on.
+	 *
+	 * @param recording
+	 *            The position of the recording, in the order given.
+	 */
+	public void setRecording(int recording) {
+		current = recording;
+	}
+
+	/**
+	 * @param path
+	 *            The path of the feed, e.g. "/all_month.atom".
+	 * @return the URL of the feed on this server.
+	 */
+	public String getURL(String path) {
+		return "http://localhost:" + server.getAddress().getPort() + path;
+	}
+
+	public int getRequests() {
+		return requests;
+	}
+
+	public int getNotModified() {
+		return notModified;
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		requests++;
+		File recording = recordings[current];
+		byte[] body = Files.readAllBytes(recording.toPath());
+
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		String etag = "\"" + Long.toHexString(crc.getValue()) + "\"";
+		// Last-Modified has a precision of one second
+		long modified = recording.lastModified() / 1000 * 1000;
+		String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME
+				.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(modified), ZoneOffset.UTC));
+
+		Headers request = exchange.getRequestHeaders();
+		Headers response = exchange.getResponseHeaders();
+		response.set("ETag", etag);
+		response.set("Last-Modified", lastModified);
+
+		// If-None-Match wins over If-Modified-Since, as in HTTP/1.1
+		String ifNoneMatch = request.getFirst("If-None-Match");
+		String ifModifiedSince = request.getFirst("If-Modified-Since");
+		boolean unchanged = ifNoneMatch != null ? ifNoneMatch.equals(etag)
+				: ifModifiedSince != null && parseDate(ifModifiedSince) >= modified;
+		if (unchanged) {
+			notModified++;
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+
+		String acceptEncoding = request.getFirst("Accept-Encoding");
+		if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+			GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+			gzip.write(body);
+			gzip.close();
+			body = compressed.toByteArray();
+			response.set("Content-Encoding", "gzip");
+		}
+
+		response.set("Content-Type", "application/atom+xml");
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream output = exchange.getResponseBody();
+		output.write(body);
+		output.close();
+	}
+
+	private static long parseDate(String date) {
+		try {
+			return ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return Long.MIN_VALUE;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package module6;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Log written by a background thread, so the drawing thread never waits on
+ * the console. Messages are queued in a bounded queue and written in batches;
+ * when the queue is full new messages are dropped rather than waited for, and
+ * the number dropped is written with the next batch.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class AsyncLog {
+
+	// Largest number of messages written at once
+	private static final int BATCH_SIZE = 256;
+
+	private final PrintStream out;
+	private final BlockingQueue<String> queue;
+	private final AtomicInteger dropped = new AtomicInteger();
+
+	/**
+	 * Construct a log and start its writing thread.
+	 *
+	 * @param out
+	 *            The stream the messages are written to.
+	 * @param capacity
+	 *            The number of messages which can wait to be written.
+	 */
+	public AsyncLog(PrintStream out, int capacity) {
+		this.out = out;
+		queue = new ArrayBlockingQueue<String>(capacity);
+
+		Thread writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "async-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Queues a message, without waiting.
+	 *
+	 * @param message
+	 *            The message.
+	 * @return false if the queue was full and the message was dropped.
+	 */
+	public boolean log(String message) {
+		if (queue.offer(message))
+			return true;
+		dropped.incrementAndGet();
+		return false;
+	}
+
+	private void write() {
+		List<String> batch = new ArrayList<String>(BATCH_SIZE);
+		StringBuilder text = new StringBuilder();
+		try {
+			while (true) {
+				// Wait for a message, then take what else is queued
+				batch.add(queue.take());
+				queue.drainTo(batch, BATCH_SIZE - 1);
+
+				int lost = dropped.getAndSet(0);
+				if (lost > 0)
+					text.append("(").append(lost).append(" log messages dropped)\n");
+				for (String message : batch)
+					text.append(message).append('\n');
+				out.print(text);
+				out.flush();
+
+				batch.clear();
+				text.setLength(0);
+			}
+		} catch (InterruptedException e) {
+			// the application is exiting
+		}
+	}
+}
@@ -9,9 +9,6 @@ import processing.core.PGraphics;
  */
 
 public class CheckControl extends GUIControl {
-	/** Serialization ID */
-	private static final long serialVersionUID = 0;
-
 	public static int SIZE = 5;
 	public static int LABEL_OFFSET_X = 7;
 	public static int LABEL_OFFSET_Y = -1;
@@ -84,7 +81,7 @@ public class CheckControl extends GUIControl {
 	 * @return the height of the check control, including label.
 	 */
 	public int controlHeight() {
-		return (int) max(getLabelHeight(), 2 * SIZE);
+		return Math.max(getLabelHeight(), 2 * SIZE);
 	}
 
 	/**
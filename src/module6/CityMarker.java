@@ -47,6 +47,15 @@ public class CityMarker extends CommonMarker {
 		pg.popStyle();
 	}
 
+	// Every city is drawn the same; quake keys are 0 or 1 modulo 4
+	public int getGlyphKey() {
+		return 2;
+	}
+
+	public float getGlyphExtent() {
+		return TRI_SIZE + 1;
+	}
+
 	/**
 	 * Show the title of the city if this marker is selected. For this method,
 	 * parameters x and y are not the map positions of the outer object, but the
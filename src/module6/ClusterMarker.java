@@ -0,0 +1,118 @@
+package module6;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import processing.core.PGraphics;
+
+/**
+ * Implements a visual marker for a cluster of earthquakes, drawn instead of
+ * its earthquakes at low zoom levels. It shows the number of earthquakes,
+ * colored by their most frequent depth class.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class ClusterMarker extends CommonMarker {
+
+	private int count;
+	private float maxMagnitude;
+	private int depthClass;
+	private int expansionZoom;
+
+	/**
+	 * Construct a ClusterMarker object.
+	 *
+	 * @param location
+	 *            The center of the earthquakes.
+	 * @param count
+	 *            The number of earthquakes.
+	 * @param maxMagnitude
+	 *            The largest magnitude of the earthquakes.
+	 * @param depthClass
+	 *            The most frequent depth class (see EarthquakeMarker).
+	 * @param expansionZoom
+	 *            The zoom level the cluster splits at.
+	 */
+	public ClusterMarker(Location location, int count, float maxMagnitude, int depthClass, int expansionZoom) {
+		super(location);
+		this.count = count;
+		this.maxMagnitude = maxMagnitude;
+		this.depthClass = depthClass;
+		this.expansionZoom = expansionZoom;
+		this.radius = 8 + 4 * (float) Math.log10(count);
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public float getMaxMagnitude() {
+		return maxMagnitude;
+	}
+
+	public int getDepthClass() {
+		return depthClass;
+	}
+
+	public int getExpansionZoom() {
+		return expansionZoom;
+	}
+
+	/**
+	 * Implementation of method to draw marker on the map.
+	 */
+	public void drawMarker(PGraphics pg, float x, float y) {
+		// Save previous drawing style
+		pg.pushStyle();
+
+		EarthquakeMarker.colorDetermine(pg, depthClass, 200);
+		pg.stroke(0);
+		pg.strokeWeight(1);
+		pg.ellipse(x, y, 2 * radius, 2 * radius);
+
+		// Number of earthquakes, abbreviated above a thousand
+		String label = count < 1000 ? Integer.toString(count)
+				: count < 10000 ? String.format("%.1fk", count / 1000f) : count / 1000 + "k";
+		pg.fill(depthClass == EarthquakeMarker.INTERMEDIATE ? 255 : 0);
+		pg.textAlign(PGraphics.CENTER, PGraphics.CENTER);
+		pg.textSize(10);
+		pg.text(label, x, y - 1);
+
+		// Restore previous drawing style
+		pg.popStyle();
+	}
+
+	/**
+	 * Show the size of the cluster if this marker is selected. For this
+	 * method, parameters x and y are not the map positions of the outer object,
+	 * but the screen positions of the marker.
+	 */
+	public void showTitle(PGraphics pg, float x, float y) {
+		// Save previous drawing style
+		pg.pushStyle();
+
+		String title = count + " earthquakes, max. magnitude " + maxMagnitude;
+
+		// Adjust display of text inside the rectangle
+		float dx = 3, dy = 1, h = 14;
+		pg.strokeWeight(1);
+		pg.textSize(10);
+
+		// Drawing rectangle underneath the text
+		pg.fill(255, 255, 224);
+		pg.rect(x + radius + dx, y - h / 2 - dy, pg.textWidth(title) + 2 * dx, h + 3 * dy);
+
+		pg.fill(0);
+		pg.text(title, x + radius + 2 * dx, y);
+
+		// Restore previous drawing style
+		pg.popStyle();
+	}
+
+	// The label changes with the count: clusters are not kept in the atlas
+	public int getGlyphKey() {
+		return -1;
+	}
+
+	public float getGlyphExtent() {
+		return radius + 1;
+	}
+}
@@ -32,6 +32,11 @@ public abstract class CommonMarker extends SimplePointMarker {
 		clicked = state;
 	}
 
+	// Screen radius within which the mouse is inside this marker
+	public float getPickRadius() {
+		return radius;
+	}
+
 	// Common piece of drawing method for markers;
 	// YOU WILL IMPLEMENT.
 	// Note that you should implement this by making calls
@@ -45,5 +50,12 @@ public abstract class CommonMarker extends SimplePointMarker {
 
 	public abstract void drawMarker(PGraphics pg, float x, float y);
 
+	// Key of the image of this marker in a MarkerAtlas: markers with the same
+	// key are drawn the same. A negative key keeps the marker out of the atlas
+	public abstract int getGlyphKey();
+
+	// Distance from the marker position to the farthest pixel it draws
+	public abstract float getGlyphExtent();
+
 	public abstract void showTitle(PGraphics pg, float x, float y);
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package module6;
+
+/**
+ * Receives the clicks on a GUI control, once the control has updated its
+ * status.
+ * 
+ * @author Luis Vsquez-Pea
+ */
+public interface ControlListener {
+
+	/**
+	 * Called after a control was clicked on.
+	 * 
+	 * @param control
+	 *            The control clicked on.
+	 */
+	void controlClicked(GUIControl control);
+}
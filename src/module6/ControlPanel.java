@@ -0,0 +1,99 @@
+package module6;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import processing.core.PGraphics;
+
+/**
+ * A set of GUI controls drawn and clicked on together. Mouse clicks are
+ * dispatched to the control under the cursor and then to its listener, so
+ * the applet does not need to know the kind of each control. The panel is
+ * dirty while any of its controls changed since the last draw, which lets it
+ * be kept in an offscreen image drawn again only when needed.
+ * 
+ * @author Luis Vsquez-Pea
+ */
+public class ControlPanel {
+
+	private List<GUIControl> controls;
+
+	/**
+	 * Construct an empty ControlPanel object.
+	 */
+	public ControlPanel() {
+		controls = new ArrayList<GUIControl>();
+	}
+
+	/**
+	 * @return the controls, in drawing order.
+	 */
+	public List<GUIControl> getControls() {
+		return controls;
+	}
+
+	/**
+	 * Adds a control to the panel.
+	 * 
+	 * @param control
+	 *            The control to be added.
+	 * @param listener
+	 *            The listener told of the clicks on the control, or null.
+	 */
+	public void add(GUIControl control, ControlListener listener) {
+		control.setListener(listener);
+		controls.add(control);
+	}
+
+	/**
+	 * Adds a control to the panel, without a listener.
+	 * 
+	 * @param control
+	 *            The control to be added.
+	 */
+	public void add(GUIControl control) {
+		controls.add(control);
+	}
+
+	/**
+	 * Clicks the control at a screen position, if any, and tells its
+	 * listener.
+	 * 
+	 * @param x
+	 *            x-coordinate of the click.
+	 * @param y
+	 *            y-coordinate of the click.
+	 * @return true if a control was clicked on.
+	 */
+	public boolean click(int x, int y) {
+		for (GUIControl control : controls)
+			if (control.contains(x, y)) {
+				control.click();
+				if (control.getListener() != null)
+					control.getListener().controlClicked(control);
+				return true;
+			}
+		return false;
+	}
+
+	/**
+	 * @return true if any control changed since the panel was last drawn.
+	 */
+	public boolean isDirty() {
+		for (GUIControl control : controls)
+			if (control.isDirty())
+				return true;
+		return false;
+	}
+
+	/**
+	 * Draws every control.
+	 * 
+	 * @param pg
+	 *            The PGraphics object to be used as a graphics buffer.
+	 */
+	public void draw(PGraphics pg) {
+		for (GUIControl control : controls)
+			control.draw(pg);
+	}
+}
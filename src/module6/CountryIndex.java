@@ -0,0 +1,234 @@
+package module6;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.AbstractShapeMarker;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.marker.MultiMarker;
+
+/**
+ * Spatial index of country markers used to find the country a location is
+ * in. Every polygon of every country (each part of a
+ * <code>MultiMarker</code> counts as a polygon) gets a bounding box, and the
+ * boxes are bucketed in a uniform latitude/longitude grid. A lookup only runs
+ * the exact point-in-polygon test on the polygons of the grid cell whose
+ * bounding boxes contain the location.
+ * <p>
+ * Lookups give the same answer as a linear scan over the country list: if
+ * polygons overlap, the first country of the list wins.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class CountryIndex {
+
+	/** Result of a lookup for a location which is not in any country */
+	public static final int NO_COUNTRY = -1;
+
+	// Size of the grid cells, in degrees
+	private static final float CELL_SIZE = 10;
+	private static final int COLUMNS = (int) (360 / CELL_SIZE);
+	private static final int ROWS = (int) (180 / CELL_SIZE);
+
+	private List<Marker> countries;
+
+	// Polygons, the country each one belongs to and their bounding boxes
+	private AbstractShapeMarker[] polygons;
+	private int[] polygonCountry;
+	private float[] minLat, maxLat, minLon, maxLon;
+
+	// Polygon indices per grid cell, in ascending order
+	private int[][] cells;
+
+	/**
+	 * Builds the index of a list of country markers, as created from
+	 * countries.geo.json.
+	 *
+	 * @param countries
+	 *            The country markers (SimplePolygonMarker or MultiMarker).
+	 */
+	public CountryIndex(List<Marker> countries) {
+		this.countries = countries;
+
+		// Collect the polygons making up every country
+		List<AbstractShapeMarker> shapes = new ArrayList<AbstractShapeMarker>();
+		List<Integer> owners = new ArrayList<Integer>();
+		for (int c = 0; c < countries.size(); c++) {
+			Marker country = countries.get(c);
+			if (country.getClass() == MultiMarker.class) {
+				for (Marker marker : ((MultiMarker) country).getMarkers()) {
+					shapes.add((AbstractShapeMarker) marker);
+					owners.add(c);
+				}
+			} else {
+				shapes.add((AbstractShapeMarker) country);
+				owners.add(c);
+			}
+		}
+
+		int n = shapes.size();
+		polygons = shapes.toArray(new AbstractShapeMarker[n]);
+		polygonCountry = new int[n];
+		minLat = new float[n];
+		maxLat = new float[n];
+		minLon = new float[n];
+		maxLon = new float[n];
+
+		// Count the polygons per cell first, then fill the cells
+		int[] counts = new int[COLUMNS * ROWS];
+		for (int p = 0; p < n; p++) {
+			polygonCountry[p] = owners.get(p);
+			computeBounds(p);
+			for (int row = row(minLat[p]); row <= row(maxLat[p]); row++)
+				for (int col = column(minLon[p]); col <= column(maxLon[p]); col++)
+					counts[row * COLUMNS + col]++;
+		}
+
+		cells = new int[COLUMNS * ROWS][];
+		for (int cell = 0; cell < cells.length; cell++) {
+			cells[cell] = new int[counts[cell]];
+			counts[cell] = 0;
+		}
+
+		for (int p = 0; p < n; p++)
+			for (int row = row(minLat[p]); row <= row(maxLat[p]); row++)
+				for (int col = column(minLon[p]); col <= column(maxLon[p]); col++) {
+					int cell = row * COLUMNS + col;
+					cells[cell][counts[cell]++] = p;
+				}
+	}
+
+	// Sets the bounding box of a polygon from its vertices
+	private void computeBounds(int p) {
+		minLat[p] = minLon[p] = Float.POSITIVE_INFINITY;
+		maxLat[p] = maxLon[p] = Float.NEGATIVE_INFINITY;
+		for (Location loc : polygons[p].getLocations()) {
+			minLat[p] = Math.min(minLat[p], loc.getLat());
+			maxLat[p] = Math.max(maxLat[p], loc.getLat());
+			minLon[p] = Math.min(minLon[p], loc.getLon());
+			maxLon[p] = Math.max(maxLon[p], loc.getLon());
+		}
+	}
+
+	private static int row(float lat) {
+		return Math.max(0, Math.min(ROWS - 1, (int) Math.floor((lat + 90) / CELL_SIZE)));
+	}
+
+	private static int column(float lon) {
+		return Math.max(0, Math.min(COLUMNS - 1, (int) Math.floor((lon + 180) / CELL_SIZE)));
+	}
+
+	/**
+	 * Finds the country a location is in.
+	 *
+	 * @param loc
+	 *            The location to be checked.
+	 * @return the index of the country in the list given to the constructor,
+	 *         or NO_COUNTRY.
+	 */
+	public int findCountry(Location loc) {
+		float lat = loc.getLat(), lon = loc.getLon();
+
+		// Polygons are sorted by country, so the first hit is the first
+		// country of the list containing the location
+		for (int p : cells[row(lat) * COLUMNS + column(lon)]) {
+			if (lat < minLat[p] || lat > maxLat[p] || lon < minLon[p] || lon > maxLon[p])
+				continue;
+			if (polygons[p].isInsideByLocation(loc))
+				return polygonCountry[p];
+		}
+
+		return NO_COUNTRY;
+	}
+
+	/**
+	 * @param id
+	 *            A country index returned by findCountry.
+	 * @return the country marker.
+	 */
+	public Marker getCountry(int id) {
+		return countries.get(id);
+	}
+
+	/**
+	 * @return the number of countries indexed.
+	 */
+	public int size() {
+		return countries.size();
+	}
+
+	/**
+	 * @return the number of polygons indexed (parts of MultiMarkers count
+	 *         separately).
+	 */
+	public int getPolygonCount() {
+		return polygons.length;
+	}
+
+	/**
+	 * @param p
+	 *            A polygon index, from 0 to getPolygonCount() - 1.
+	 * @return the polygon, in country order.
+	 */
+	public AbstractShapeMarker getPolygon(int p) {
+		return polygons[p];
+	}
+
+	/**
+	 * @param p
+	 *            A polygon index, from 0 to getPolygonCount() - 1.
+	 * @return the index of the country the polygon belongs to.
+	 */
+	public int getPolygonCountry(int p) {
+		return polygonCountry[p];
+	}
+
+	/**
+	 * Finds the country a location is in by checking every country in turn,
+	 * without any index.
+	 *
+	 * @param countries
+	 *            The country markers.
+	 * @param loc
+	 *            The location to be checked.
+	 * @return the index of the first country containing the location, or
+	 *         NO_COUNTRY.
+	 */
+	public static int findCountryLinear(List<Marker> countries, Location loc) {
+		for (int c = 0; c < countries.size(); c++)
+			if (isInCountry(loc, countries.get(c)))
+				return c;
+		return NO_COUNTRY;
+	}
+
+	/**
+	 * Tests whether a location is in a given country.
+	 *
+	 * @param checkLoc
+	 *            The location to be checked.
+	 * @param country
+	 *            The country marker (SimplePolygonMarker or MultiMarker).
+	 */
+	public static boolean isInCountry(Location checkLoc, Marker country) {
+		// some countries represented it as MultiMarker
+		// looping over SimplePolygonMarkers which make them up to use
+		// isInsideByLoc
+		if (country.getClass() == MultiMarker.class) {
+
+			// looping over markers making up MultiMarker
+			for (Marker marker : ((MultiMarker) country).getMarkers()) {
+
+				// checking if inside
+				if (((AbstractShapeMarker) marker).isInsideByLocation(checkLoc)) {
+					// return if is inside one
+					return true;
+				}
+			}
+			return false;
+		}
+
+		// check if inside country represented by SimplePolygonMarker
+		return ((AbstractShapeMarker) country).isInsideByLocation(checkLoc);
+	}
+}
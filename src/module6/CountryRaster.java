@@ -0,0 +1,261 @@
+package module6;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import de.fhpotsdam.unfolding.geo.Location;
+
+/**
+ * Raster of the countries on a regular latitude/longitude grid, used as a
+ * fast path in front of a <code>CountryIndex</code>. Every cell stores the
+ * country covering it entirely, <code>OCEAN</code> if no country touches it,
+ * or <code>BOUNDARY</code> if some polygon edge crosses it. Most lookups are
+ * then a single array read, and only locations in boundary cells need the
+ * exact point-in-polygon test.
+ * <p>
+ * Building the raster takes a while, so it can be saved to a binary file and
+ * loaded on later starts. The file records a fingerprint of the country
+ * polygons, and is ignored if the countries change.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class CountryRaster {
+
+	/** Cell value for cells outside every country */
+	public static final short OCEAN = -1;
+	/** Cell value for cells crossed by a polygon edge */
+	public static final short BOUNDARY = -2;
+
+	// Size of the cells, in degrees
+	private static final float CELL_SIZE = .5f;
+	private static final int COLUMNS = (int) (360 / CELL_SIZE);
+	private static final int ROWS = (int) (180 / CELL_SIZE);
+
+	// Binary file header
+	private static final int MAGIC = 0x51524153; // "QRAS"
+	private static final int VERSION = 1;
+
+	private CountryIndex index;
+	private long fingerprint;
+	private short[] cells;
+
+	private CountryRaster(CountryIndex index, long fingerprint, short[] cells) {
+		this.index = index;
+		this.fingerprint = fingerprint;
+		this.cells = cells;
+	}
+
+	/**
+	 * Rasterizes the countries of an index.
+	 *
+	 * @param index
+	 *            The country index, also used for boundary cells.
+	 * @return the raster.
+	 */
+	public static CountryRaster build(CountryIndex index) {
+		short[] cells = new short[COLUMNS * ROWS];
+
+		// Mark every cell touched by a polygon edge. The cells of the
+		// bounding box of each edge are marked, which is conservative
+		for (int p = 0; p < index.getPolygonCount(); p++) {
+			List<Location> locations = index.getPolygon(p).getLocations();
+			int n = locations.size();
+			for (int i = 0; i < n; i++) {
+				Location a = locations.get(i), b = locations.get((i + 1) % n);
+				int row0 = row(Math.min(a.getLat(), b.getLat())), row1 = row(Math.max(a.getLat(), b.getLat()));
+				int col0 = column(Math.min(a.getLon(), b.getLon())), col1 = column(Math.max(a.getLon(), b.getLon()));
+				for (int row = row0; row <= row1; row++)
+					for (int col = col0; col <= col1; col++)
+						cells[row * COLUMNS + col] = BOUNDARY;
+			}
+		}
+
+		// No edge runs between neighbouring cells of a row which are not
+		// boundary cells, so a whole run of them belongs to the same country:
+		// one exact test at the first cell classifies the run
+		for (int row = 0; row < ROWS; row++) {
+			short value = OCEAN;
+			boolean inRun = false;
+			for (int col = 0; col < COLUMNS; col++) {
+				int cell = row * COLUMNS + col;
+				if (cells[cell] == BOUNDARY) {
+					inRun = false;
+					continue;
+				}
+				if (!inRun) {
+					Location center = new Location(-90 + (row + .5f) * CELL_SIZE, -180 + (col + .5f) * CELL_SIZE);
+					int country = index.findCountry(center);
+					value = country == CountryIndex.NO_COUNTRY ? OCEAN : (short) country;
+					inRun = true;
+				}
+				cells[cell] = value;
+			}
+		}
+
+		return new CountryRaster(index, fingerprint(index), cells);
+	}
+
+	/**
+	 * Loads the raster from a file, or builds it and saves it if the file is
+	 * missing or was built from other countries.
+	 *
+	 * @param index
+	 *            The country index.
+	 * @param file
+	 *            The raster file.
+	 * @return the raster.
+	 */
+	public static CountryRaster loadOrBuild(CountryIndex index, File file) {
+		CountryRaster raster = load(index, file);
+		if (raster == null) {
+			raster = build(index);
+			try {
+				raster.save(file);
+			} catch (IOException e) {
+				System.err.println("Could not save country raster to " + file + ": " + e.getMessage());
+			}
+		}
+		return raster;
+	}
+
+	/**
+	 * Loads the raster from a file.
+	 *
+	 * @param index
+	 *            The country index.
+	 * @param file
+	 *            The raster file.
+	 * @return the raster, or null if the file is missing, unreadable or was
+	 *         built from other countries.
+	 */
+	public static CountryRaster load(CountryIndex index, File file) {
+		if (!file.isFile())
+			return null;
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != fingerprint(index)
+					|| in.readInt() != COLUMNS || in.readInt() != ROWS)
+				return null;
+
+			short[] cells = new short[COLUMNS * ROWS];
+			for (int cell = 0; cell < cells.length; cell++)
+				cells[cell] = in.readShort();
+
+			return new CountryRaster(index, fingerprint(index), cells);
+		} catch (IOException e) {
+			System.err.println("Could not load country raster from " + file + ": " + e.getMessage());
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Saves the raster to a binary file.
+	 *
+	 * @param file
+	 *            The raster file.
+	 */
+	public void save(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fingerprint);
+			out.writeInt(COLUMNS);
+			out.writeInt(ROWS);
+			for (short value : cells)
+				out.writeShort(value);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void close(DataInputStream in) {
+		if (in != null)
+			try {
+				in.close();
+			} catch (IOException e) {
+				// nothing left to read
+			}
+	}
+
+	// Checksum of the vertices of every polygon and of the country it
+	// belongs to
+	private static long fingerprint(CountryIndex index) {
+		CRC32 crc = new CRC32();
+		for (int p = 0; p < index.getPolygonCount(); p++) {
+			updateInt(crc, index.getPolygonCountry(p));
+			for (Location loc : index.getPolygon(p).getLocations()) {
+				updateInt(crc, Float.floatToIntBits(loc.getLat()));
+				updateInt(crc, Float.floatToIntBits(loc.getLon()));
+			}
+		}
+		return crc.getValue();
+	}
+
+	private static void updateInt(CRC32 crc, int value) {
+		crc.update(value >>> 24);
+		crc.update(value >>> 16);
+		crc.update(value >>> 8);
+		crc.update(value);
+	}
+
+	private static int row(float lat) {
+		return Math.max(0, Math.min(ROWS - 1, (int) Math.floor((lat + 90) / CELL_SIZE)));
+	}
+
+	private static int column(float lon) {
+		return Math.max(0, Math.min(COLUMNS - 1, (int) Math.floor((lon + 180) / CELL_SIZE)));
+	}
+
+	/**
+	 * Reads the raster cell of a location.
+	 *
+	 * @param loc
+	 *            The location to be checked.
+	 * @return a country index, OCEAN or BOUNDARY.
+	 */
+	public short getCell(Location loc) {
+		return cells[row(loc.getLat()) * COLUMNS + column(loc.getLon())];
+	}
+
+	/**
+	 * Finds the country a location is in. Only locations in boundary cells are
+	 * checked against the country polygons.
+	 *
+	 * @param loc
+	 *            The location to be checked.
+	 * @return the index of the country, or CountryIndex.NO_COUNTRY.
+	 */
+	public int findCountry(Location loc) {
+		short value = getCell(loc);
+		if (value == BOUNDARY)
+			return index.findCountry(loc);
+		return value == OCEAN ? CountryIndex.NO_COUNTRY : value;
+	}
+
+	/**
+	 * @return the fraction of cells which need the exact test.
+	 */
+	public float getBoundaryFraction() {
+		int boundary = 0;
+		for (short value : cells)
+			if (value == BOUNDARY)
+				boundary++;
+		return (float) boundary / cells.length;
+	}
+}
@@ -1,27 +1,33 @@
 package module6;
 
+import java.io.File;
 import java.text.DecimalFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import de.fhpotsdam.unfolding.UnfoldingMap;
 import de.fhpotsdam.unfolding.data.Feature;
 import de.fhpotsdam.unfolding.data.GeoJSONReader;
 import de.fhpotsdam.unfolding.data.PointFeature;
 import de.fhpotsdam.unfolding.geo.Location;
-import de.fhpotsdam.unfolding.marker.AbstractShapeMarker;
 import de.fhpotsdam.unfolding.marker.Marker;
-import de.fhpotsdam.unfolding.marker.MultiMarker;
 import de.fhpotsdam.unfolding.providers.Google;
 import de.fhpotsdam.unfolding.providers.MBTilesMapProvider;
 import de.fhpotsdam.unfolding.utils.MapUtils;
 import de.fhpotsdam.unfolding.utils.ScreenPosition;
+import parsing.FeedPoller;
 import parsing.ParseFeed;
 import processing.core.PApplet;
+import processing.core.PGraphics;
 
 /**
  * EarthquakeCityMap: An application with an interactive map displaying
@@ -42,6 +48,16 @@ public class EarthquakeCityMap extends PApplet {
 	// You can ignore this. It's to get rid of eclipse warnings
 	private static final long serialVersionUID = 1L;
 
+	// Format of the times shown, in UTC as the feed times
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm 'UTC'")
+			.withZone(ZoneOffset.UTC);
+
+	// Lengths of the time window shown, from an hour to a year
+	private static final long[] WINDOW_LENGTHS = { VisibilityEngine.HOUR, 3 * VisibilityEngine.HOUR,
+			6 * VisibilityEngine.HOUR, 12 * VisibilityEngine.HOUR, VisibilityEngine.DAY, 3 * VisibilityEngine.DAY,
+			7 * VisibilityEngine.DAY, 30 * VisibilityEngine.DAY, 90 * VisibilityEngine.DAY,
+			365 * VisibilityEngine.DAY };
+
 	// IF YOU ARE WORKING OFFILINE, change the value of this variable to true
 	private static final boolean offline = false;
 
@@ -51,37 +67,105 @@ public class EarthquakeCityMap extends PApplet {
 	 */
 	public static String mbTilesString = "blankLight-1-3.mbtiles";
 
+	// Change to true to poll the feeds the map was loaded from while running,
+	// and merge their new, updated and removed earthquakes. Feeds at a URL
+	// are requested again, local feed files are read again once modified
+	private static final boolean pollFeeds = false;
+	private static final long feedPollSeconds = 60;
+
 	// feed with magnitude 2.5+ Earthquakes
 	private String earthquakesURL = "http://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/2.5_week.atom";
+	// All the feeds merged into the quakes (at most 32)
+	private String[] earthquakeFeeds;
 
 	// The files containing city names and info and country names and info
 	private String cityFile = "city-data.json";
 	private String countryFile = "countries.geo.json";
+	// Cache of the rasterized countries, rebuilt when the countries change
+	private String countryRasterFile = "countries.raster";
 
 	// The map
 	private UnfoldingMap map;
 
 	// Markers for each city
 	private List<Marker> cityMarkers;
+	// Spatial index of the cities, for threat circle queries
+	private LocationIndex cityIndex;
 	// Markers for each earthquake
 	private List<Marker> quakeMarkers;
+	// Columnar data of the earthquakes, read by the markers
+	private QuakeStore quakeStore;
+	// Earthquakes in magnitude order
+	private MagnitudeIndex magnitudeIndex;
+	// Earthquakes with a time, in time order
+	private TimeIndex timeIndex;
+	// End of the time window shown (keys '[' and ']'), excluded, or
+	// QuakeStore.NO_TIME when the age controls are used; and its length
+	// (keys ',' and '.'), a position in WINDOW_LENGTHS
+	private long windowEnd = QuakeStore.NO_TIME;
+	private int windowLength = 4;
+	// Replay of the quakes in time order (key 'p'), drawn instead of the
+	// quake markers while playing
+	private TimeLapse timeLapse;
 
 	// A List of country markers
 	private List<Marker> countryMarkers;
+	// Spatial index of the country markers, and its raster fast path
+	private CountryIndex countryIndex;
+	private CountryRaster countryRaster;
+	// Classification and aggregation of quakes, shared with QuakeBatch
+	private QuakeEngine quakeEngine;
 
 	// NEW IN MODULE 5
 	private CommonMarker lastSelected;
 	private CommonMarker lastClicked;
+	// Screen geometry of the threat of the quake clicked on
+	private ThreatCache threatCache = new ThreatCache();
+	// Background polling of each feed, when polled
+	private FeedPoller[] feedPollers;
+	// Screen grid of the visible markers, for hover and click picking
+	private PickGrid pickGrid = new PickGrid(MAP_X, MAP_Y, MAP_WIDTH, MAP_HEIGHT);
+	// Filters of the markers shown
+	private VisibilityEngine visibility;
+	// Changes whenever markers are hidden, shown, added, removed or
+	// highlighted
+	private int markersVersion;
+	// Changes whenever quakes are hidden, shown, added, removed or moved, but
+	// not highlighted: the clusters are only built again then
+	private int quakesVersion;
+	// Offscreen images of the quake and city markers, drawn over the map
+	private MarkerLayer quakeLayer, cityLayer;
+	// Glyphs of the markers, when they are drawn in batches (key 'b')
+	private MarkerAtlas markerAtlas;
+	private boolean batchedMarkers, atlasFullLogged;
+	// Clusters of the visible quakes per zoom level, when shown (key 'c')
+	private QuakeClusters quakeClusters = new QuakeClusters();
+	private boolean clusteredQuakes;
+	// The mouse moved since the last frame
+	private boolean hoverPending;
+	// Aggregates of the visible quakes, and their panel above the map, with
+	// the markers version it was drawn for
+	private QuakeStats quakeStats;
+	private PGraphics statsPanel;
+	private int statsPanelVersion = -1;
+	// Console messages of the drawing thread
+	private AsyncLog log = new AsyncLog(System.out, 1024);
 
 	// EXTENSION IN MODULE 6
-	private List<GUIControl> mapControls;
+	private ControlPanel mapControls;
+	// Offscreen images of the left panel
+	private static final int PANEL_WIDTH = 200, CONTROL_PANEL_TOP = 315;
+	private PGraphics keyPanel, controlPanel;
 	// Option controls
 	private OptionGroup grpTop;
 	private GUIControl optAll, optTop10, optTop100;
 	// Check controls
-	private GUIControl chkPastHour, chkPastDay, chkPastWeek, chkPastMonth;
+	private GUIControl chkPastHour, chkPastDay, chkPastWeek, chkPastMonth, chkOlder;
 	private GUIControl chkShowCities, chkPlaceX, chkOceanThreat, chkThreat, chkShowLoc;
 
+	// Screen area of the map
+	private static final int MAP_X = 200, MAP_Y = 50, MAP_WIDTH = 650, MAP_HEIGHT = 600;
+
 	public List<Marker> getCityMarkers() {
 		return cityMarkers;
 	}
@@ -90,11 +174,11 @@ public class EarthquakeCityMap extends PApplet {
 		// (1) Initializing canvas and map tiles
 		size(900, 700, OPENGL);
 		if (offline) {
-			map = new UnfoldingMap(this, 200, 50, 650, 600, new MBTilesMapProvider(mbTilesString));
+			map = new UnfoldingMap(this, MAP_X, MAP_Y, MAP_WIDTH, MAP_HEIGHT, new MBTilesMapProvider(mbTilesString));
 			earthquakesURL = "2.5_week.atom"; // The same feed, but saved August
 												// 7, 2015
 		} else {
-			map = new UnfoldingMap(this, 200, 50, 650, 600, new Google.GoogleMapProvider());
+			map = new UnfoldingMap(this, MAP_X, MAP_Y, MAP_WIDTH, MAP_HEIGHT, new Google.GoogleMapProvider());
 			// IF YOU WANT TO TEST WITH A LOCAL FILE, uncomment the next line
 			// earthquakesURL = "2.5_week.atom";
 		}
@@ -107,45 +191,157 @@ public class EarthquakeCityMap extends PApplet {
 		// New data for this module
 		earthquakesURL = "all_month.atom";
 
-		// (2) Reading in earthquake data and geometric properties
+		// Feeds read at startup; overlapping feeds are merged by event id,
+		// keeping the newest revision of each event, e.g.
+		// earthquakeFeeds = new String[] { usgs + "all_hour.atom", usgs +
+		// "2.5_day.atom", usgs + "2.5_week.atom", usgs + "all_month.atom" };
+		earthquakeFeeds = new String[] { earthquakesURL };
+
+		// (2) Reading in earthquake data and geometric properties, as a
+		// pipeline: the three files are loaded at the same time, and the
+		// quakes are classified on all cores once the countries are ready
+		final StartupProfile profile = new StartupProfile();
+		ExecutorService loaders = Executors.newFixedThreadPool(2 + earthquakeFeeds.length);
+
 		// STEP 1: load country features and markers
-		List<Feature> countries = GeoJSONReader.loadData(this, countryFile);
-		countryMarkers = MapUtils.createSimpleMarkers(countries);
+		Future<?> countriesLoaded = loaders.submit(new Runnable() {
+			public void run() {
+				long begin = profile.begin();
+				List<Feature> countries = loadSnapshot(countryFile, new GeoSnapshot.Parser() {
+					public List<Feature> parse() {
+						return GeoJSONReader.loadData(EarthquakeCityMap.this, countryFile);
+					}
+				});
+				countryMarkers = MapUtils.createSimpleMarkers(countries);
+				profile.end("Load countries", begin);
+
+				begin = profile.begin();
+				countryIndex = new CountryIndex(countryMarkers);
+				countryRaster = CountryRaster.loadOrBuild(countryIndex, new File(sketchPath(countryRasterFile)));
+				quakeEngine = new QuakeEngine(countryMarkers, countryRaster);
+				profile.end("Index countries", begin);
+			}
+		});
 
 		// STEP 2: read in city data
-		List<Feature> cities = GeoJSONReader.loadData(this, cityFile);
-		cityMarkers = new ArrayList<Marker>();
-		for (Feature city : cities) {
-			cityMarkers.add(new CityMarker(city));
-		}
-
-		// STEP 3: read in earthquake RSS feed
-		List<PointFeature> earthquakes = ParseFeed.parseEarthquake(this, earthquakesURL);
-		quakeMarkers = new ArrayList<Marker>();
+		Future<?> citiesLoaded = loaders.submit(new Runnable() {
+			public void run() {
+				long begin = profile.begin();
+				List<Feature> cities = loadSnapshot(cityFile, new GeoSnapshot.Parser() {
+					public List<Feature> parse() {
+						return GeoJSONReader.loadData(EarthquakeCityMap.this, cityFile);
+					}
+				});
+				cityMarkers = new ArrayList<Marker>();
+				for (Feature city : cities) {
+					cityMarkers.add(new CityMarker(city));
+				}
+				profile.end("Load cities", begin);
 
-		for (PointFeature feature : earthquakes) {
-			// check if LandQuake
-			if (isLand(feature)) {
-				quakeMarkers.add(new LandQuakeMarker(feature));
+				begin = profile.begin();
+				cityIndex = new LocationIndex(cityMarkers);
+				profile.end("Index cities", begin);
 			}
-			// OceanQuakes
-			else {
-				quakeMarkers.add(new OceanQuakeMarker(feature));
+		});
+
+		// STEP 3: read in the earthquake RSS feeds, one entry at a time
+		List<Future<List<PointFeature>>> feedsLoaded = new ArrayList<Future<List<PointFeature>>>();
+		for (final String feed : earthquakeFeeds) {
+			feedsLoaded.add(loaders.submit(new Callable<List<PointFeature>>() {
+				public List<PointFeature> call() {
+					long begin = profile.begin();
+					List<Feature> loaded = loadSnapshot(feed, new GeoSnapshot.Parser() {
+						public List<PointFeature> parse() {
+							final List<PointFeature> features = new ArrayList<PointFeature>();
+							boolean streamed = ParseFeed.streamEarthquake(EarthquakeCityMap.this, feed,
+									new ParseFeed.FeatureHandler() {
+										public void handle(PointFeature feature) {
+											features.add(feature);
+										}
+									});
+							if (streamed)
+								return features;
+
+							// Fallback: load the whole feed with the DOM parser
+							return ParseFeed.parseEarthquakeDOM(EarthquakeCityMap.this, feed);
+						}
+					});
+
+					List<PointFeature> features = new ArrayList<PointFeature>(loaded.size());
+					for (Feature feature : loaded)
+						features.add((PointFeature) feature);
+					profile.end("Load " + feed, begin);
+					return features;
+				}
+			}));
+		}
+		loaders.shutdown();
+
+		// STEP 4: merge the feeds by event id, then find the country of every
+		// quake
+		List<List<PointFeature>> feeds = new ArrayList<List<PointFeature>>();
+		for (Future<List<PointFeature>> feed : feedsLoaded)
+			feeds.add(await(feed));
+		long begin = profile.begin();
+		List<PointFeature> quakes = ParseFeed.mergeEarthquakes(feeds);
+		profile.end("Merge feeds", begin);
+
+		await(countriesLoaded);
+		begin = profile.begin();
+		int[] quakeCountries = quakeEngine.classify(quakes);
+		profile.end("Classify quakes", begin);
+
+		// STEP 5: create the quake markers, in feed order
+		begin = profile.begin();
+		quakeMarkers = new ArrayList<Marker>();
+		// Country codes of the store are the country indexes, for the stats
+		quakeStore = new QuakeStore(quakes.size(), quakeEngine.getCountryNames());
+		quakeStats = new QuakeStats(quakeEngine.getCountryNames().length);
+		magnitudeIndex = new MagnitudeIndex();
+		timeIndex = new TimeIndex();
+		for (int i = 0; i < quakes.size(); i++)
+			addQuakeMarker(quakes.get(i), quakeCountries[i]);
+		profile.end("Create quake markers", begin);
+
+		// Every feed is polled from the entries it was loaded with, and every
+		// quake knows the feeds listing it, so a quake gone from one feed
+		// stays while another feed lists it
+		if (pollFeeds) {
+			feedPollers = new FeedPoller[earthquakeFeeds.length];
+			for (int feed = 0; feed < earthquakeFeeds.length; feed++) {
+				String source = earthquakeFeeds[feed];
+				feedPollers[feed] = new FeedPoller(source.contains("://") ? source : dataPath(source),
+						feedPollSeconds);
+				for (PointFeature feature : feeds.get(feed)) {
+					feedPollers[feed].seed(feature);
+					int i = feature.getId() == null ? -1 : quakeStore.indexOf(feature.getId());
+					if (i >= 0)
+						quakeStore.addFeeds(i, 1 << feed);
+				}
 			}
 		}
 
-		// could be used for debugging
-		printInfo();
-		sortAndPrint(20);
+		await(citiesLoaded);
+		System.out.println(profile);
 
 		// (3) Add markers to map
 		// NOTE: Country markers are not added to the map. They are used
-		// for their geometric properties
-		map.addMarkers(quakeMarkers);
-		map.addMarkers(cityMarkers);
+		// for their geometric properties. Quake and city markers are not
+		// added either: they are drawn by their own layers, cities over
+		// quakes
+		quakeLayer = new MarkerLayer(this, MAP_X, MAP_Y, MAP_WIDTH, MAP_HEIGHT, quakeMarkers);
+		cityLayer = new MarkerLayer(this, MAP_X, MAP_Y, MAP_WIDTH, MAP_HEIGHT, cityMarkers);
+		markerAtlas = new MarkerAtlas(this, 1024);
+		timeLapse = new TimeLapse(timeIndex, quakeStore, MAP_X, MAP_Y, MAP_WIDTH, MAP_HEIGHT);
+		visibility = new VisibilityEngine(quakeMarkers, magnitudeIndex, timeIndex, cityMarkers, cityIndex);
+		visibility.setListener(quakeStats);
+
+		// could be used for debugging
+		printInfo();
+		sortAndPrint(20);
 
 		// Create GUI controls
-		mapControls = new ArrayList<GUIControl>();
+		mapControls = new ControlPanel();
 
 		int xbase = 50;
 		int ybase = 340;
@@ -153,9 +349,9 @@ public class EarthquakeCityMap extends PApplet {
 		// Option controls
 		ybase += 20; // Updating info display base
 		grpTop = new OptionGroup();
-		optAll = new OptionControl("All", xbase, ybase + 115);
-		optTop10 = new OptionControl("Top 10", xbase, ybase + 135);
-		optTop100 = new OptionControl("Top 100", xbase, ybase + 155);
+		optAll = new OptionControl("All", xbase, ybase + 135);
+		optTop10 = new OptionControl("Top 10", xbase, ybase + 155);
+		optTop100 = new OptionControl("Top 100", xbase, ybase + 175);
 		grpTop.add(optAll);
 		grpTop.add(optTop10);
 		grpTop.add(optTop100);
@@ -165,19 +361,21 @@ public class EarthquakeCityMap extends PApplet {
 		chkPastDay = new CheckControl("Past day", xbase, ybase + 40);
 		chkPastWeek = new CheckControl("Past week", xbase, ybase + 60);
 		chkPastMonth = new CheckControl("Past month", xbase, ybase + 80);
+		chkOlder = new CheckControl("Older", xbase, ybase + 100);
 
 		ybase += 20; // Updating info display base
-		chkShowCities = new CheckControl("Show cities", xbase, ybase + 170);
-		chkPlaceX = new CheckControl("Highlight quakes", xbase, ybase + 190);
-		chkOceanThreat = new CheckControl("Ocean threat lines", xbase, ybase + 210);
-		chkThreat = new CheckControl("Show threat circle", xbase, ybase + 230);
-		chkShowLoc = new CheckControl("Show coordinates", xbase, ybase + 250);
+		chkShowCities = new CheckControl("Show cities", xbase, ybase + 190);
+		chkPlaceX = new CheckControl("Highlight quakes", xbase, ybase + 210);
+		chkOceanThreat = new CheckControl("Ocean threat lines", xbase, ybase + 230);
+		chkThreat = new CheckControl("Show threat circle", xbase, ybase + 250);
+		chkShowLoc = new CheckControl("Show coordinates", xbase, ybase + 270);
 
 		// Default status values
 		chkPastHour.setStatus(true);
 		chkPastDay.setStatus(true);
 		chkPastWeek.setStatus(true);
 		chkPastMonth.setStatus(false);
+		chkOlder.setStatus(false);
 		optAll.setStatus(true);
 		chkShowCities.setStatus(true);
 		chkPlaceX.setStatus(true);
@@ -185,17 +383,33 @@ public class EarthquakeCityMap extends PApplet {
 		chkThreat.setStatus(true);
 		chkShowLoc.setStatus(false);
 
+		// Highlighted quakes depend on these controls; option controls need
+		// no listener: the top quakes are found through the magnitude index
+		ControlListener highlight = new ControlListener() {
+			public void controlClicked(GUIControl control) {
+				highlightMarkers();
+			}
+		};
+		// The age controls replace the time window shown, if any
+		ControlListener ages = new ControlListener() {
+			public void controlClicked(GUIControl control) {
+				windowEnd = QuakeStore.NO_TIME;
+				highlightMarkers();
+			}
+		};
+
 		// Adding GUI controls to map
 		// Option controls
 		mapControls.add(optAll);
 		mapControls.add(optTop10);
 		mapControls.add(optTop100);
-		mapControls.add(chkPastHour);
-		mapControls.add(chkPastDay);
-		mapControls.add(chkPastWeek);
-		mapControls.add(chkPastMonth);
+		mapControls.add(chkPastHour, ages);
+		mapControls.add(chkPastDay, ages);
+		mapControls.add(chkPastWeek, ages);
+		mapControls.add(chkPastMonth, ages);
+		mapControls.add(chkOlder, ages);
 		// Check controls
-		mapControls.add(chkPlaceX);
+		mapControls.add(chkPlaceX, highlight);
 		mapControls.add(chkOceanThreat);
 		mapControls.add(chkThreat);
 		mapControls.add(chkShowCities);
@@ -203,8 +417,172 @@ public class EarthquakeCityMap extends PApplet {
 
 		setVisibilityOfMarkers();
 		highlightMarkers();
+
+		// Offscreen images of the left panel. The key never changes; the map
+		// options are drawn on the first frame
+		keyPanel = createGraphics(PANEL_WIDTH, CONTROL_PANEL_TOP, P2D);
+		keyPanel.beginDraw();
+		addKey(keyPanel);
+		keyPanel.endDraw();
+		controlPanel = createGraphics(PANEL_WIDTH, height - CONTROL_PANEL_TOP, P2D);
+		statsPanel = createGraphics(MAP_WIDTH, MAP_Y, P2D);
+
+		// Text and stroke settings the panels used to leave on the screen,
+		// which the titles, coordinates and threat area drawn over the map
+		// rely on
+		textAlign(LEFT, CENTER);
+		textSize(12);
+		strokeWeight(2);
+
+		// Changes of the feeds are merged into the map while running
+		if (pollFeeds)
+			for (FeedPoller poller : feedPollers)
+				poller.start();
 	} // End setup
 
+	// Loads the features of a data file from its binary snapshot, next to the
+	// sketch, or parses the file and writes the snapshot. Snapshots are only
+	// used for files of the data folder, not for URLs
+	private List<Feature> loadSnapshot(String fileName, GeoSnapshot.Parser parser) {
+		return GeoSnapshot.loadOrParse(dataFile(fileName), new File(sketchPath(fileName + ".snapshot")), parser);
+	}
+
+	// Waits for a startup task; the startup fails if the task failed
+	private static <T> T await(Future<T> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Startup interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Startup failed", e.getCause());
+		}
+	}
+
+	// Helper method which creates the marker of a quake read from the feed
+	private EarthquakeMarker addQuakeMarker(PointFeature feature) {
+		return addQuakeMarker(feature, countryRaster.findCountry(feature.getLocation()));
+	}
+
+	// Same, for a quake whose country was already found
+	private EarthquakeMarker addQuakeMarker(PointFeature feature, int country) {
+		EarthquakeMarker quake;
+		// check if LandQuake
+		if (setCountry(feature, country)) {
+			quake = new LandQuakeMarker(feature, quakeStore);
+		}
+		// OceanQuakes
+		else {
+			quake = new OceanQuakeMarker(feature, quakeStore);
+		}
+		quakeMarkers.add(quake);
+		magnitudeIndex.add(quake.getIndex(), quake.getMagnitude());
+		indexTime(quake);
+		return quake;
+	}
+
+	// Helper method which merges the changes found by the feed pollers into
+	// the quake data and the map markers
+	private void applyFeedChanges() {
+		if (feedPollers == null)
+			return;
+
+		boolean changed = false;
+		for (int feed = 0; feed < feedPollers.length; feed++) {
+			String message;
+			while ((message = feedPollers[feed].nextMessage()) != null)
+				log.log(message);
+
+			FeedPoller.Changes changes;
+			while ((changes = feedPollers[feed].nextChanges()) != null) {
+				// A quake gone from this feed stays while another feed lists
+				// it
+				for (String id : changes.removed) {
+					int i = quakeStore.indexOf(id);
+					if (i >= 0 && !quakeStore.removeFeed(i, feed))
+						removeQuakeMarker(visibility.getQuake(i));
+				}
+
+				// A quake new to this feed may already be on the map through
+				// another feed
+				for (PointFeature feature : changes.updated)
+					putQuakeMarker(feature, feed);
+				for (PointFeature feature : changes.inserted)
+					putQuakeMarker(feature, feed);
+
+				log.log("Feed update of " + earthquakeFeeds[feed] + ": " + changes);
+				changed = true;
+			}
+		}
+		if (!changed)
+			return;
+		quakesVersion++;
+
+		// Also changes the markers version, for the layers and picking
+		highlightMarkers();
+		setVisibilityOfMarkers();
+	}
+
+	// Helper method which adds the quake of a feed entry to the map, or
+	// updates its marker if it is already there
+	private void putQuakeMarker(PointFeature feature, int feed) {
+		int i = quakeStore.indexOf(feature.getId());
+		EarthquakeMarker quake = i >= 0 ? visibility.getQuake(i) : null;
+		if (quake != null && quakeStore.isOlderRevision(i, feature)) {
+			// Another feed already gave a newer revision, which stays
+			quakeStore.addFeeds(i, 1 << feed);
+			return;
+		}
+		if (quake != null && quake.isOnLand() == isLand(feature)) {
+			// Same kind of marker: the values are updated in place
+			quakeStore.update(i, feature);
+			quakeStore.addFeeds(i, 1 << feed);
+			quake.refresh();
+			quakeStats.refresh(quake);
+			magnitudeIndex.add(i, quake.getMagnitude());
+			indexTime(quake);
+			visibility.updateQuake(quake);
+			if (quake == lastClicked)
+				threatCache.invalidate();
+			return;
+		}
+
+		// New, or moved between land and ocean: the marker is replaced and
+		// keeps the feeds listing it
+		int feeds = 1 << feed;
+		if (quake != null) {
+			feeds |= quakeStore.getFeeds(i);
+			removeQuakeMarker(quake);
+		}
+		quake = addQuakeMarker(feature);
+		quakeStore.addFeeds(quake.getIndex(), feeds);
+		visibility.addQuake(quake);
+	}
+
+	// Helper method which keeps the time index of a quake up to date
+	private void indexTime(EarthquakeMarker quake) {
+		if (quake.getTime() == QuakeStore.NO_TIME)
+			timeIndex.remove(quake.getIndex());
+		else
+			timeIndex.add(quake.getIndex(), quake.getTime());
+	}
+
+	// Helper method which takes a quake out of the data and the markers
+	private void removeQuakeMarker(EarthquakeMarker quake) {
+		quakeStore.remove(quake.getIndex());
+		magnitudeIndex.remove(quake.getIndex());
+		timeIndex.remove(quake.getIndex());
+		visibility.removeQuake(quake);
+		quakeMarkers.remove(quake);
+
+		if (quake == lastClicked) {
+			lastClicked = null;
+			threatCache.invalidate();
+		}
+		if (quake == lastSelected)
+			lastSelected = null;
+	}
+
 	// Helper method which prints out some info about the earthquakes
 	private void printInfo() {
 		System.out.println("\n**********************\n***EARTHQUAKES DATA***\n**********************");
@@ -212,16 +590,46 @@ public class EarthquakeCityMap extends PApplet {
 	}
 
 	public void draw() {
+		applyFeedChanges();
+
 		background(0);
 		map.draw();
 
+		// The markers are only drawn again after a pan, a zoom or a change
+		// of the markers; otherwise their images are copied. While the
+		// time-lapse plays, it draws the quakes instead
+		boolean playing = timeLapse.advance();
+		if (playing) {
+			timeLapse.draw(g, map);
+		} else {
+			quakeLayer.setMarkers(getQuakeLayerMarkers());
+			if (quakeLayer.update(map, markersVersion) && lastSelected instanceof ClusterMarker) {
+				// The cluster under the cursor may be gone
+				lastSelected = null;
+				hoverPending = true;
+			}
+			quakeLayer.draw(g);
+		}
+		cityLayer.update(map, markersVersion);
+		cityLayer.draw(g);
+		if (batchedMarkers && markerAtlas.isFull() && !atlasFullLogged) {
+			log.log("Marker atlas full with " + markerAtlas.size() + " glyphs, new glyphs are drawn as vectors");
+			atlasFullLogged = true;
+		}
+
+		// Hover is picked once per frame, however many times the mouse moved
+		if (hoverPending && !playing) {
+			hoverPending = false;
+			selectMarkerIfHover();
+		}
+
 		// If some earthquake marker was clicked on
 		if (lastClicked instanceof EarthquakeMarker) {
-			// Get quake location on map
-			Location quakeLoc = lastClicked.getLocation();
-			ScreenPosition quakePos = map.getScreenPosition(quakeLoc);
 			EarthquakeMarker quake = (EarthquakeMarker) lastClicked;
-			double threatRadius = quake.threatCircle();
+
+			// Threat geometry is only computed again when another quake is
+			// selected or the map is zoomed or panned
+			threatCache.update(quake, map, cityIndex);
 
 			// Saving graph style
 			pushStyle();
@@ -233,37 +641,14 @@ public class EarthquakeCityMap extends PApplet {
 				strokeWeight(2);
 				quake.colorStrokeDetermine(g);
 
-				ScreenPosition cityPos;
-
-				// Looping through cities
-				for (Marker marker : cityMarkers) {
-					if (lastClicked.getDistanceTo(marker.getLocation()) <= threatRadius) {
-						cityPos = map.getScreenPosition(marker.getLocation());
-						g.line(quakePos.x, quakePos.y, cityPos.x, cityPos.y);
-					}
-				}
+				threatCache.drawThreatLines(g);
 			}
 
-			// Show threat circle for selected earthquake
-			// This is only valid for small threat radius
+			// Show threat area (geodesic circle) for selected earthquake
 			if (chkThreat.getStatus()) {
-				// Bisection method (analogous to binary search)
-				int k = 0; // number of iterations
-				float a = 0, b = 5000, diam = a + .5f * (b - a);
-				double f = 0, eps = .001;
-
-				while (b - a > eps && k++ < 1000)
-					if ((f = quakeLoc.getDistance(map.getLocation(quakePos.x + (diam = a + .5f * (b - a)),
-							quakePos.y + diam))) < threatRadius)
-						a = diam;
-					else if (f > threatRadius)
-						b = diam;
-					else
-						break;
-				diam *= 2 * sqrt(2);
 				quake.colorDetermine(g, 50);
 				quake.colorStrokeDetermine(g);
-				ellipse(quakePos.x, quakePos.y, diam, diam);
+				threatCache.drawThreatArea(g);
 			}
 
 			// Recovering graph style
@@ -292,19 +677,35 @@ public class EarthquakeCityMap extends PApplet {
 		}
 
 		// Adding left panel (key and map options)
-		addKey();
-		addGUIControls();
+		drawPanels();
+		drawStats();
+		if (playing)
+			drawTimeLapseStatus();
 	}
 
-	private void sortAndPrint(int numToPrint) {
-		Object[] quakes = quakeMarkers.toArray();
-		int i = 0;
+	// helper method to draw the time reached by the time-lapse and its speed
+	// at the bottom of the map
+	private void drawTimeLapseStatus() {
+		long speed = timeLapse.getSpeed();
+		String status = TIME_FORMAT.format(Instant.ofEpochMilli(timeLapse.getCursor())) + "   "
+				+ (speed >= VisibilityEngine.DAY ? speed / VisibilityEngine.DAY + " days/s"
+						: speed / VisibilityEngine.HOUR + " hours/s")
+				+ "   " + timeLapse.getDrawn() + " quakes";
+		if (timeLapse.getSkipped() > 0)
+			status += " (" + timeLapse.getSkipped() + " over the frame budget)";
 
-		// Built-in Java method for sorting an array of objects
-		Arrays.sort(quakes, Collections.reverseOrder());
+		pushStyle();
+		fill(0);
+		textAlign(LEFT, BOTTOM);
+		textSize(12);
+		text(status, MAP_X + 5, MAP_Y + MAP_HEIGHT - 5);
+		popStyle();
+	}
 
-		while (i < quakes.length && i < numToPrint)
-			System.out.println(quakes[i++]);
+	private void sortAndPrint(int numToPrint) {
+		// Quakes are printed in magnitude order, through the quake indices
+		for (int i = 0; i < magnitudeIndex.size() && i < numToPrint; i++)
+			System.out.println(visibility.getQuake(magnitudeIndex.get(i)));
 	}
 
 	/**
@@ -312,25 +713,34 @@ public class EarthquakeCityMap extends PApplet {
 	 */
 	@Override
 	public void mouseMoved() {
+		// The marker under the cursor is picked in the next frame
+		hoverPending = true;
+	}
+
+	private void selectMarkerIfHover() {
 		// clear the last selection
 		if (lastSelected != null) {
 			lastSelected.setSelected(false);
 			lastSelected = null;
 		}
 
-		selectMarkerIfHover(cityMarkers);
-		selectMarkerIfHover(quakeMarkers);
+		lastSelected = pickMarker();
+		if (lastSelected != null)
+			lastSelected.setSelected(true);
 	}
 
-	private void selectMarkerIfHover(List<Marker> markers) {
-		if (lastSelected == null)
-			for (Marker marker : markers) {
-				if (marker.isInside(map, mouseX, mouseY)) {
-					marker.setSelected(true);
-					lastSelected = (CommonMarker) marker;
-					break;
-				}
-			}
+	// The quakes, or their clusters at the zoom level of the map
+	private List<? extends Marker> getQuakeLayerMarkers() {
+		if (!clusteredQuakes)
+			return quakeMarkers;
+		quakeClusters.update(quakeMarkers, quakesVersion);
+		return quakeClusters.getMarkers(map.getZoomLevel());
+	}
+
+	// Finds the visible marker under the cursor, cities first
+	private CommonMarker pickMarker() {
+		pickGrid.update(map, markersVersion, cityMarkers, getQuakeLayerMarkers());
+		return pickGrid.pick(mouseX, mouseY);
 	}
 
 	/**
@@ -344,8 +754,14 @@ public class EarthquakeCityMap extends PApplet {
 		if (!selectControlIfClicked())
 			if (lastClicked == null) {
 				// Checking markers
-				selectMarkerIfClicked(cityMarkers);
-				selectMarkerIfClicked(quakeMarkers);
+				lastClicked = pickMarker();
+				if (lastClicked instanceof ClusterMarker) {
+					// Clusters are not selected: the map zooms in until they
+					// split
+					ClusterMarker cluster = (ClusterMarker) lastClicked;
+					map.zoomAndPanTo(cluster.getExpansionZoom(), cluster.getLocation());
+					lastClicked = null;
+				}
 				if (lastClicked != null)
 					lastClicked.setClicked(true);
 			} else {
@@ -354,323 +770,275 @@ public class EarthquakeCityMap extends PApplet {
 			}
 		setVisibilityOfMarkers();
 
-		int n = quakeMarkers.size();
-		if (optTop10.getStatus())
-			n = 10;
-		else if (optTop100.getStatus())
-			n = 100;
-
-		printInfo();
-		for (Marker marker : quakeMarkers) {
-			if (!marker.isHidden()) {
-				System.out.println(marker);
-				if (--n < 1)
-					break;
-			}
+		// The statistics of the visible quakes are in the stats panel; the
+		// log is written by its own thread. The threat cache counters cover
+		// the frames drawn since startup
+		if (lastClicked != null) {
+			String name = lastClicked instanceof EarthquakeMarker ? ((EarthquakeMarker) lastClicked).getTitle()
+					: lastClicked.getStringProperty("name");
+			log.log("Clicked: " + name + ", " + quakeStats.getVisible() + " quakes visible. " + threatCache);
 		}
 	}
 
-	// Helper method that will check if any marker is clicked on
-	public void selectMarkerIfClicked(List<Marker> markers) {
-		if (lastClicked == null) {
-			for (Marker marker : markers)
-				if (marker.isInside(map, mouseX, mouseY) && !marker.isHidden()) {
-					lastClicked = (CommonMarker) marker;
-					break;
-				}
+	/**
+	 * The event handler for key presses. Key 'b' switches the markers between
+	 * vector drawing and batched drawing from the marker atlas, key 'c' turns
+	 * the clustering of quakes on and off. Keys '[' and ']' show the quakes of
+	 * a time window instead of the ages, starting with the window ending at
+	 * the newest quake and moving it back or forward by its length; keys ','
+	 * and '.' shorten and lengthen the window, from an hour to a year, keeping
+	 * its end. Clicking an age control goes back to the ages. Key 'p' starts
+	 * and stops the time-lapse of all the quakes, keys '+' and '-' change its
+	 * speed.
+	 */
+	@Override
+	public void keyPressed() {
+		if (key == 'b' || key == 'B') {
+			batchedMarkers = !batchedMarkers;
+			quakeLayer.setAtlas(batchedMarkers ? markerAtlas : null);
+			cityLayer.setAtlas(batchedMarkers ? markerAtlas : null);
+			log.log("Markers drawn " + (batchedMarkers ? "in batches from the atlas" : "as vectors"));
+		} else if (key == 'c' || key == 'C') {
+			clusteredQuakes = !clusteredQuakes;
+			// The quake layer and the pick grid change lists
+			markersVersion++;
+			log.log("Quakes " + (clusteredQuakes ? "clustered by zoom level" : "shown one by one"));
+		} else if (key == '[' || key == ']' || key == ',' || key == '.' || key == '<' || key == '>') {
+			long latest = visibility.getLatestTime();
+			if (latest == QuakeStore.NO_TIME)
+				return;
+			if (key == ',' || key == '<')
+				windowLength = Math.max(windowLength - 1, 0);
+			else if (key == '.' || key == '>')
+				windowLength = Math.min(windowLength + 1, WINDOW_LENGTHS.length - 1);
+			// The first window ends just after the newest quake
+			if (windowEnd == QuakeStore.NO_TIME)
+				windowEnd = latest + 1;
+			else if (key == '[')
+				windowEnd -= WINDOW_LENGTHS[windowLength];
+			else if (key == ']')
+				windowEnd += WINDOW_LENGTHS[windowLength];
+			setVisibilityOfMarkers();
+			// The stats panel shows the window even if no quake changed
+			statsPanelVersion = -1;
+		} else if (key == 'p' || key == 'P') {
+			if (timeLapse.isPlaying())
+				timeLapse.stop();
+			else
+				timeLapse.start();
+		} else if (key == '+' || key == '=' || key == '-') {
+			timeLapse.changeSpeed(key != '-');
 		}
 	}
 
 	// Helper method that will select and check if any control is clicked on
 	public boolean selectControlIfClicked() {
-		for (GUIControl mapControl : mapControls)
-			if (mapControl.contains(mouseX, mouseY)) {
-				mapControl.click();
-				if (mapControl instanceof CheckControl) {
-					CheckControl chk = (CheckControl) mapControl;
-					if (chk == chkPlaceX || chk == chkPastHour || chk == chkPastDay)
-						highlightMarkers();
-				} else if (mapControl instanceof OptionControl) {
-					// Option controls
-					OptionControl opt = (OptionControl) mapControl;
-					if ((opt == optTop10 && optTop10.getStatus()) || (opt == optTop100 && optTop100.getStatus())) {
-						quakeMarkers.sort(Collections.reverseOrder());
-					}
-				}
-				return true;
-			}
-		// No control was clicked on
-		return false;
-	}
-
-	// loop over and hide all markers
-	private void hideMarkers() {
-
-		for (Marker marker : quakeMarkers) {
-			marker.setHidden(true);
-		}
-
-		for (Marker marker : cityMarkers) {
-			marker.setHidden(true);
-		}
+		// The control clicked on, if any, tells its listener
+		return mapControls.click(mouseX, mouseY);
 	}
 
-	// Helper method to determine which markers must be unhidden
+	// Helper method to determine which markers must be unhidden: the filters
+	// which changed are passed to the visibility engine
 	private void setVisibilityOfMarkers() {
-		// Hide all markers
-		hideMarkers();
-
-		// Show clicked marker
-		if (lastClicked != null)
-			if (!(lastClicked instanceof CityMarker && !chkShowCities.getStatus()))
-				lastClicked.setHidden(false);
-
-		showValidMarkersOf(quakeMarkers);
-		showValidMarkersOf(cityMarkers);
+		visibility.setAgeShown(QuakeStore.AGE_PAST_HOUR, chkPastHour.getStatus());
+		visibility.setAgeShown(QuakeStore.AGE_PAST_DAY, chkPastDay.getStatus());
+		visibility.setAgeShown(QuakeStore.AGE_PAST_WEEK, chkPastWeek.getStatus());
+		visibility.setAgeShown(QuakeStore.AGE_PAST_MONTH, chkPastMonth.getStatus());
+		visibility.setAgeShown(QuakeStore.AGE_OLDER, chkOlder.getStatus());
+		if (windowEnd == QuakeStore.NO_TIME)
+			visibility.clearTimeWindow();
+		else
+			visibility.setTimeWindow(windowEnd - WINDOW_LENGTHS[windowLength], windowEnd);
+		visibility.setTopCount(
+				optTop10.getStatus() ? 10 : optTop100.getStatus() ? 100 : VisibilityEngine.ALL);
+		visibility.setFocus(lastClicked);
+		visibility.setShowCities(chkShowCities.getStatus());
+
+		if (visibility.update()) {
+			markersVersion++;
+			quakesVersion++;
+		}
 	}
 
 	// Loop through quakeMarkers to determine which earthquakes should be
 	// highlighted (add an X)
 	private void highlightMarkers() {
-		String age;
+		byte age;
 		for (Marker marker : quakeMarkers) {
-			age = marker.getStringProperty("age");
-			((EarthquakeMarker) marker)
-					.setHighlighted(chkPlaceX.getStatus() && (age.equals("Past Hour") || age.equals("Past Day")));
+			age = visibility.getAgeCode((EarthquakeMarker) marker);
+			((EarthquakeMarker) marker).setHighlighted(
+					chkPlaceX.getStatus() && (age == QuakeStore.AGE_PAST_HOUR || age == QuakeStore.AGE_PAST_DAY));
 		}
+		markersVersion++;
 	}
 
-	// Loop through quakeMarkers and cityMarkers to determine which
-	// quakes or cities will be set unhidden
-	private void showValidMarkersOf(List<Marker> markers) {
-		int n = 0;
-		Location loc = null;
-		double threatRadius = 0;
-
-		// Optimizing calculations
-		if (lastClicked != null) {
-			// Get location of an earthquake/city marker
-			loc = lastClicked.getLocation();
-			// Get the threat circle radius (constant when looping through
-			// cityMarkers)
-			if (lastClicked instanceof EarthquakeMarker)
-				threatRadius = ((EarthquakeMarker) lastClicked).threatCircle();
+	// helper method to draw the left panel (key and map options) from its
+	// offscreen images; the map options image is drawn again only after a
+	// control changed
+	private void drawPanels() {
+		if (mapControls.isDirty()) {
+			controlPanel.beginDraw();
+			controlPanel.clear();
+			addGUIControls(controlPanel);
+			controlPanel.endDraw();
 		}
 
-		for (Marker marker : markers) {
-			if (marker instanceof EarthquakeMarker && !(lastClicked instanceof EarthquakeMarker)) {
-				String age = marker.getStringProperty("age");
-
-				if ((optAll.getStatus() || (optTop10.getStatus() && n < 10) || (optTop100.getStatus() && n < 100))
-						&& ((chkPastHour.getStatus() && "Past Hour".equals(age))
-								|| (chkPastDay.getStatus() && "Past Day".equals(age))
-								|| (chkPastWeek.getStatus() && "Past Week".equals(age))
-								|| (chkPastMonth.getStatus() && "Past Month".equals(age)))) {
-
-					if (lastClicked != null)
-						if (marker.getDistanceTo(loc) > ((EarthquakeMarker) marker).threatCircle())
-							continue;
-
-					if (!optAll.getStatus())
-						n++;
-
-					// Show quake marker
-					marker.setHidden(false);
-				}
-			} else if (marker instanceof CityMarker && !(lastClicked instanceof CityMarker)) {
-				// In case the user chose to hide all the cities
-				if (!chkShowCities.getStatus())
-					break;
-
-				// Otherwise, all cities are unhidden unless they are not
-				// contained within a selected earthquake threat circle
-				if (lastClicked != null)
-					if (marker.getDistanceTo(loc) > threatRadius)
-						continue;
+		image(keyPanel, 0, 0);
+		image(controlPanel, 0, CONTROL_PANEL_TOP);
+	}
 
-				// Show city marker
-				marker.setHidden(false);
-			}
+	// helper method to draw the statistics of the visible quakes above the
+	// map, from their offscreen image; the image is drawn again only after
+	// the markers changed
+	private void drawStats() {
+		if (statsPanelVersion != markersVersion) {
+			statsPanel.beginDraw();
+			statsPanel.clear();
+			addStats(statsPanel);
+			statsPanel.endDraw();
+			statsPanelVersion = markersVersion;
 		}
+		image(statsPanel, MAP_X, 0);
 	}
 
-	// helper method to draw key in GUI
-	private void addKey() {
+	// helper method to draw the statistics of the visible quakes
+	private void addStats(PGraphics pg) {
+		pg.fill(255);
+		pg.textAlign(LEFT, CENTER);
+		pg.textSize(12);
+		String when = windowEnd == QuakeStore.NO_TIME ? ""
+				: " from " + TIME_FORMAT.format(Instant.ofEpochMilli(windowEnd - WINDOW_LENGTHS[windowLength]))
+						+ " to " + TIME_FORMAT.format(Instant.ofEpochMilli(windowEnd));
+		pg.text("Visible quakes" + when + ": " + quakeStats.getVisible() + " (" + quakeStats.getLand() + " on land, "
+				+ quakeStats.getOcean() + " in the ocean)", 0, 9);
+		pg.text("Shallow: " + quakeStats.getDepthCount(EarthquakeMarker.SHALLOW) + ", intermediate: "
+				+ quakeStats.getDepthCount(EarthquakeMarker.INTERMEDIATE) + ", deep: "
+				+ quakeStats.getDepthCount(EarthquakeMarker.DEEP), 0, 25);
+
+		BitSet largest = new BitSet();
+		magnitudeIndex.topK(1, visibility.getVisibleQuakes(), largest);
+		if (!largest.isEmpty())
+			pg.text("Largest: " + visibility.getQuake(largest.nextSetBit(0)).getTitle(), 0, 41);
+	}
 
-		text("4.0+ Magnitude", 75, 175);
-		text("Below 4.0", 75, 225);
-		fill(255, 250, 240);
+	// helper method to draw key in GUI
+	private void addKey(PGraphics pg) {
 
 		int xbase = 25;
 		int ybase = 50;
 
-		rect(xbase, ybase, 150, 250);
+		pg.fill(255, 250, 240);
+		pg.strokeWeight(2);
+		pg.rect(xbase, ybase, 150, 250);
 
-		fill(0);
-		textAlign(LEFT, CENTER);
-		textSize(12);
-		text("Earthquake Key", xbase + 25, ybase + 25);
+		pg.fill(0);
+		pg.textAlign(LEFT, CENTER);
+		pg.textSize(12);
+		pg.text("Earthquake Key", xbase + 25, ybase + 25);
 
-		fill(150, 30, 30);
+		pg.fill(150, 30, 30);
 		int tri_xbase = xbase + 35;
 		int tri_ybase = ybase + 50;
-		triangle(tri_xbase, tri_ybase - CityMarker.TRI_SIZE, tri_xbase - CityMarker.TRI_SIZE,
+		pg.triangle(tri_xbase, tri_ybase - CityMarker.TRI_SIZE, tri_xbase - CityMarker.TRI_SIZE,
 				tri_ybase + CityMarker.TRI_SIZE, tri_xbase + CityMarker.TRI_SIZE, tri_ybase + CityMarker.TRI_SIZE);
 
-		fill(0);
-		textAlign(LEFT, CENTER);
-		text("City Marker", tri_xbase + 15, tri_ybase);
-		text("Land Quake", xbase + 50, ybase + 70);
-		text("Ocean Quake", xbase + 50, ybase + 90);
-		text("Size ~ Magnitude", xbase + 25, ybase + 110);
-
-		text("Shallow", xbase + 50, ybase + 140);
-		text("Intermediate", xbase + 50, ybase + 160);
-		text("Deep", xbase + 50, ybase + 180);
+		pg.fill(0);
+		pg.text("City Marker", tri_xbase + 15, tri_ybase);
+		pg.text("Land Quake", xbase + 50, ybase + 70);
+		pg.text("Ocean Quake", xbase + 50, ybase + 90);
+		pg.text("Size ~ Magnitude", xbase + 25, ybase + 110);
 
-		text("Past hour", xbase + 50, ybase + 200);
+		pg.text("Shallow", xbase + 50, ybase + 140);
+		pg.text("Intermediate", xbase + 50, ybase + 160);
+		pg.text("Deep", xbase + 50, ybase + 180);
 
-		fill(255);
-		ellipse(xbase + 35, ybase + 70, 10, 10);
-		rect(xbase + 35 - 5, ybase + 90 - 5, 10, 10);
+		pg.text("Past hour", xbase + 50, ybase + 200);
 
-		fill(color(255, 255, 0));
-		ellipse(xbase + 35, ybase + 140, 12, 12);
-		fill(color(0, 0, 255));
-		ellipse(xbase + 35, ybase + 160, 12, 12);
-		fill(color(255, 0, 0));
-		ellipse(xbase + 35, ybase + 180, 12, 12);
+		pg.fill(255);
+		pg.ellipse(xbase + 35, ybase + 70, 10, 10);
+		pg.rect(xbase + 35 - 5, ybase + 90 - 5, 10, 10);
 
-		textAlign(LEFT, CENTER);
-		fill(0, 0, 0);
-		text("Shallow", xbase + 50, ybase + 140);
-		text("Intermediate", xbase + 50, ybase + 160);
-		text("Deep", xbase + 50, ybase + 180);
-
-		text("Past hour", xbase + 50, ybase + 200);
+		pg.fill(255, 255, 0);
+		pg.ellipse(xbase + 35, ybase + 140, 12, 12);
+		pg.fill(0, 0, 255);
+		pg.ellipse(xbase + 35, ybase + 160, 12, 12);
+		pg.fill(255, 0, 0);
+		pg.ellipse(xbase + 35, ybase + 180, 12, 12);
 
-		fill(255, 255, 255);
+		pg.fill(255, 255, 255);
 		int centerx = xbase + 35;
 		int centery = ybase + 200;
-		ellipse(centerx, centery, 12, 12);
+		pg.ellipse(centerx, centery, 12, 12);
 
-		strokeWeight(2);
-		line(centerx - 8, centery - 8, centerx + 8, centery + 8);
-		line(centerx - 8, centery + 8, centerx + 8, centery - 8);
+		pg.line(centerx - 8, centery - 8, centerx + 8, centery + 8);
+		pg.line(centerx - 8, centery + 8, centerx + 8, centery - 8);
 	}
 
 	// helper method to draw controls in GUI
-	private void addGUIControls() {
+	private void addGUIControls(PGraphics pg) {
 
 		int xbase = 25;
 		int ybase = 325;
 
-		pushStyle();
+		pg.pushMatrix();
+		pg.translate(0, -CONTROL_PANEL_TOP);
 
-		fill(255, 250, 240);
-		rect(xbase, ybase, 150, 325);
+		pg.fill(255, 250, 240);
+		pg.strokeWeight(2);
+		pg.rect(xbase, ybase, 150, 345);
 
-		fill(0);
-		textSize(13);
-		text("Map options", xbase + 35, ybase + 15);
-		textSize(12);
+		pg.fill(0);
+		pg.textAlign(LEFT, CENTER);
+		pg.textSize(13);
+		pg.text("Map options", xbase + 35, ybase + 15);
+		pg.textSize(12);
 
 		ybase += 10;
 
-		for (GUIControl mapControl : mapControls)
-			mapControl.draw(g);
+		mapControls.draw(pg);
 
 		// Title and age separation line
-		strokeWeight(3);
-		line(xbase, ybase += 25, xbase + 150, ybase);
+		pg.strokeWeight(3);
+		pg.line(xbase, ybase += 25, xbase + 150, ybase);
 		// Age and magnitude separation line
-		line(xbase, ybase += 98, xbase + 150, ybase);
+		pg.line(xbase, ybase += 118, xbase + 150, ybase);
 		// Magnitude and extra options separation line
-		line(xbase, ybase += 75, xbase + 150, ybase);
+		pg.line(xbase, ybase += 75, xbase + 150, ybase);
 
-		popStyle();
+		pg.popMatrix();
 	}
 
 	// Checks whether this quake occurred on land. If it did, it sets the
 	// "country" property of its PointFeature to the country where it occurred
-	// and returns true. Notice that the helper method isInCountry will
-	// set this "country" property already. Otherwise it returns false.
+	// and returns true. Otherwise it returns false.
 	private boolean isLand(PointFeature earthquake) {
 
-		// IMPLEMENT THIS: loop over all countries to check if location is in
-		// any of them
-		// If it is, add 1 to the entry in countryQuakes corresponding to this
-		// country.
-		for (Marker country : countryMarkers) {
-			if (isInCountry(earthquake, country)) {
-				return true;
-			}
+		// One raster read for most quakes; only quakes near a border are
+		// checked against the country polygons (see CountryRaster)
+		return setCountry(earthquake, countryRaster.findCountry(earthquake.getLocation()));
+	}
+
+	// Sets the "country" property of a quake found in a country (not
+	// NO_COUNTRY) and returns true; returns false for the ocean
+	private boolean setCountry(PointFeature earthquake, int country) {
+		if (country != CountryIndex.NO_COUNTRY) {
+			earthquake.addProperty("country", quakeEngine.getCountryName(country));
+			return true;
 		}
 
 		// not inside any country
 		return false;
 	}
 
+	// Reads the per-country counts of the visible quakes from the stats,
+	// which are kept up to date as quakes are shown and hidden
 	private void printQuakes() {
-		Map<Object, Integer> quakesPerCtry = new HashMap<>();
-		int quakesInOcean = 0;
-
-		for (Marker feature : quakeMarkers) {
-			if (!feature.isHidden()) {
-				Object k = feature.getProperty("country");
-				if (k == null) {
-					// In the ocean
-					quakesInOcean++;
-				} else if (quakesPerCtry.containsKey(k)) {
-					// Update number of earthquakes for country
-					quakesPerCtry.put(k, quakesPerCtry.get(k) + 1);
-				} else {
-					// Add country to the Map data structure
-					quakesPerCtry.put(k, 1);
-				}
-			}
-		}
-
-		for (Map.Entry<Object, Integer> entry : quakesPerCtry.entrySet()) {
-			System.out.println(entry.getKey() + ": " + entry.getValue());
+		StringTable countryNames = quakeStore.getCountryNames();
+		for (int c = 0; c < quakeStats.getCountryCodes(); c++) {
+			if (quakeStats.getCountryCount(c) > 0)
+				System.out.println(countryNames.decode(c) + ": " + quakeStats.getCountryCount(c));
 		}
 
-		System.out.println("OCEAN QUAKES: " + quakesInOcean);
-	}
-
-	// helper method to test whether a given earthquake is in a given country
-	// This will also add the country property to the properties of the
-	// earthquake feature if
-	// it's in one of the countries.
-	// You should not have to modify this code
-	private boolean isInCountry(PointFeature earthquake, Marker country) {
-		// getting location of feature
-		Location checkLoc = earthquake.getLocation();
-
-		// some countries represented it as MultiMarker
-		// looping over SimplePolygonMarkers which make them up to use
-		// isInsideByLoc
-		if (country.getClass() == MultiMarker.class) {
-
-			// looping over markers making up MultiMarker
-			for (Marker marker : ((MultiMarker) country).getMarkers()) {
-
-				// checking if inside
-				if (((AbstractShapeMarker) marker).isInsideByLocation(checkLoc)) {
-					earthquake.addProperty("country", country.getProperty("name"));
-
-					// return if is inside one
-					return true;
-				}
-			}
-		}
-
-		// check if inside country represented by SimplePolygonMarker
-		else if (((AbstractShapeMarker) country).isInsideByLocation(checkLoc)) {
-			earthquake.addProperty("country", country.getProperty("name"));
-
-			return true;
-		}
-		return false;
+		System.out.println("OCEAN QUAKES: " + quakeStats.getOcean());
 	}
 }
@@ -1,10 +1,12 @@
 package module6;
 
 import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
 import processing.core.PGraphics;
 
 /**
- * Implements a visual marker for earthquakes on an earthquake map
+ * Implements a visual marker for earthquakes on an earthquake map. The data
+ * of the earthquake is read from its index in a QuakeStore.
  * 
  * @author UC San Diego Intermediate Software Development MOOC team
  */
@@ -22,8 +24,12 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	// Records whether this earthquake was requested to be highlighted
 	private boolean highlighted;
 
-	// Constants for distance
-	protected static final float kmPerMile = 1.609344f;
+	// Columnar store holding the earthquake data, and index in the store
+	private final QuakeStore store;
+	private final int index;
+
+	// Threat area polygons, computed the first time they are needed
+	private ThreatArea threatArea;
 
 	/** Greater than or equal to this threshold is a moderate earthquake */
 	public static final float THRESHOLD_MODERATE = 5;
@@ -35,6 +41,9 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	/** Greater than or equal to this threshold is a deep depth */
 	public static final float THRESHOLD_DEEP = 300;
 
+	/** Shallow, intermediate and deep classes of depth */
+	public static final int SHALLOW = 0, INTERMEDIATE = 1, DEEP = 2;
+
 	// Getters and setters for earthquake properties
 	public boolean isHighlighted() {
 		return highlighted;
@@ -45,20 +54,56 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	}
 
 	public float getMagnitude() {
-		return Float.parseFloat(getProperty("magnitude").toString());
+		return store.getMagnitude(index);
 	}
 
 	public float getDepth() {
-		return Float.parseFloat(getProperty("depth").toString());
+		return store.getDepth(index);
 	}
 
 	public String getTitle() {
-		return (String) getProperty("title");
+		return store.getTitle(index);
 
 	}
 
 	public float getRadius() {
-		return Float.parseFloat(getProperty("radius").toString());
+		return 2 * store.getMagnitude(index);
+	}
+
+	public int getDepthClass() {
+		return depthClass(getDepth());
+	}
+
+	// Class of a depth in km: SHALLOW, INTERMEDIATE or DEEP
+	public static int depthClass(float depth) {
+		return depth < THRESHOLD_INTERMEDIATE ? SHALLOW : depth < THRESHOLD_DEEP ? INTERMEDIATE : DEEP;
+	}
+
+	public byte getAgeCode() {
+		return store.getAgeCode(index);
+	}
+
+	// Get the country the earthquake is in (null if in the ocean)
+	public String getCountry() {
+		return store.getCountry(index);
+	}
+
+	// Event time in epoch milliseconds, or QuakeStore.NO_TIME
+	public long getTime() {
+		return store.getTime(index);
+	}
+
+	// Dense code of the country (see QuakeStore), or QuakeStore.OCEAN
+	public short getCountryCode() {
+		return store.getCountryCode(index);
+	}
+
+	public QuakeStore getStore() {
+		return store;
+	}
+
+	public int getIndex() {
+		return index;
 	}
 
 	public boolean isOnLand() {
@@ -69,20 +114,26 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	public abstract void drawEarthquake(PGraphics pg, float x, float y);
 
 	// constructor
-	public EarthquakeMarker(PointFeature feature) {
+	// The feature properties are copied to the store, not kept in the marker
+	public EarthquakeMarker(PointFeature feature, QuakeStore store) {
 		super(feature.getLocation());
-		// Add a radius property and then set the properties
-		java.util.HashMap<String, Object> properties = feature.getProperties();
-		float magnitude = Float.parseFloat(properties.get("magnitude").toString());
-		properties.put("radius", 2 * magnitude);
-		setProperties(properties);
+		this.store = store;
+		this.index = store.add(feature);
+		this.radius = 1.75f * getMagnitude();
+	}
+
+	// Takes the values of the store again, after the earthquake was updated
+	public void refresh() {
+		setLocation(new Location(store.getLat(index), store.getLon(index)));
 		this.radius = 1.75f * getMagnitude();
+		threatArea = null;
 	}
 
 	public int compareTo(EarthquakeMarker marker) {
-		if (getMagnitude() < marker.getMagnitude())
+		float magnitude = getMagnitude(), other = marker.getMagnitude();
+		if (magnitude < other)
 			return -1;
-		else if (getMagnitude() > marker.getMagnitude())
+		else if (magnitude > other)
 			return 1;
 		else
 			return 0;
@@ -112,6 +163,17 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 		pg.popStyle();
 	}
 
+	// Key of the marker image: shape, depth color, highlight and the radius
+	// rounded to half a pixel
+	public int getGlyphKey() {
+		return Math.round(2 * radius) << 5 | (highlighted ? 1 : 0) << 4 | getDepthClass() << 2 | (isOnLand ? 0 : 1);
+	}
+
+	// The X of highlighted quakes goes 2 pixels past the radius
+	public float getGlyphExtent() {
+		return radius + (highlighted ? 3 : 1);
+	}
+
 	/**
 	 * Show the title of the earthquake if this marker is selected. For this
 	 * method, parameters x and y are not the map positions of the outer object,
@@ -144,9 +206,18 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	 * for safety-critical or predictive applications.
 	 */
 	public double threatCircle() {
-		double miles = 20.0f * Math.pow(1.8, 2 * getMagnitude() - 5);
-		double km = (miles * kmPerMile);
-		return km;
+		// Precomputed by the store, see QuakeStore.threatCircle
+		return store.getThreatRadius(index);
+	}
+
+	/**
+	 * Return the threat area of this earthquake: the geodesic circle with the
+	 * threat circle radius. It is computed once and then cached.
+	 */
+	public ThreatArea getThreatArea() {
+		if (threatArea == null)
+			threatArea = new ThreatArea(getLocation(), threatCircle());
+		return threatArea;
 	}
 
 	// determine color of marker from depth
@@ -165,11 +236,14 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 
 	// Overloaded method (includes opacity)
 	public void colorDetermine(PGraphics pg, float opacity) {
-		float depth = getDepth();
+		colorDetermine(pg, getDepthClass(), opacity);
+	}
 
-		if (depth < THRESHOLD_INTERMEDIATE) {
+	// Color of a depth class, for markers standing for several earthquakes
+	public static void colorDetermine(PGraphics pg, int depthClass, float opacity) {
+		if (depthClass == SHALLOW) {
 			pg.fill(255, 255, 0, opacity);
-		} else if (depth < THRESHOLD_DEEP) {
+		} else if (depthClass == INTERMEDIATE) {
 			pg.fill(0, 0, 255, opacity);
 		} else {
 			pg.fill(255, 0, 0, opacity);
@@ -1,6 +1,5 @@
 package module6;
 
-import processing.core.PApplet;
 import processing.core.PGraphics;
 
 /**
@@ -16,13 +15,17 @@ import processing.core.PGraphics;
  * An abstract <code>method void click()</code> defines the control behavior
  * after a mouse click action. Other abstract methods related to the calculation
  * of label dimensions are included and implemented in derived classes.
+ * <p>
+ * The label dimensions are measured once, on the first draw after the label
+ * is set. A control is dirty from any change of its status, label or position
+ * until it is drawn again, so a panel of controls is only drawn again when
+ * some control is dirty (see <code>ControlPanel</code>). The optional
+ * <code>ControlListener</code> is told of the clicks on the control.
  * 
  * @author Luis Vsquez-Pea
  * @version 2015-11-15
  */
-public abstract class GUIControl extends PApplet {
-	/** Serialization ID */
-	private static final long serialVersionUID = 0;
+public abstract class GUIControl {
 
 	private int posX, posY;
 	private int labelWidth;
@@ -30,6 +33,11 @@ public abstract class GUIControl extends PApplet {
 	private String label;
 	private boolean status;
 
+	// The label dimensions are up to date, the control changed since drawn
+	private boolean measured;
+	private boolean dirty = true;
+	private ControlListener listener;
+
 	/**
 	 * Construct an GUIControl object from the text label and the screen
 	 * coordinates where the control symbol should be centered.
@@ -89,7 +97,10 @@ public abstract class GUIControl extends PApplet {
 	 *            the status to set
 	 */
 	public void setStatus(boolean status) {
-		this.status = status;
+		if (this.status != status) {
+			this.status = status;
+			dirty = true;
+		}
 	}
 
 	/**
@@ -105,6 +116,7 @@ public abstract class GUIControl extends PApplet {
 	 */
 	public void setPosX(int x) {
 		posX = x;
+		dirty = true;
 	}
 
 	/**
@@ -120,6 +132,7 @@ public abstract class GUIControl extends PApplet {
 	 */
 	public void setPosY(int y) {
 		posY = y;
+		dirty = true;
 	}
 
 	/**
@@ -135,6 +148,30 @@ public abstract class GUIControl extends PApplet {
 	 */
 	public void setLabel(String text) {
 		label = text;
+		measured = false;
+		dirty = true;
+	}
+
+	/**
+	 * @return true if the control changed since it was last drawn.
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * @return the listener told of the clicks, or null.
+	 */
+	public ControlListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * @param listener
+	 *            the listener told of the clicks, or null
+	 */
+	public void setListener(ControlListener listener) {
+		this.listener = listener;
 	}
 
 	/**
@@ -147,9 +184,13 @@ public abstract class GUIControl extends PApplet {
 		// Draw control symbol and label text
 		drawControl(pg);
 
-		// Set control dimensions
-		labelWidth = (int) pg.textWidth(getLabel());
-		labelHeight = (int) pg.textAscent();
+		// Set control dimensions, once per label
+		if (!measured) {
+			labelWidth = (int) pg.textWidth(getLabel());
+			labelHeight = (int) pg.textAscent();
+			measured = true;
+		}
+		dirty = false;
 	}
 
 	/**
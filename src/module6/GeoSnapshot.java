@@ -0,0 +1,374 @@
+package module6;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.Feature.FeatureType;
+import de.fhpotsdam.unfolding.data.MultiFeature;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.data.ShapeFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+/**
+ * Binary snapshot of the features parsed from a data file (GeoJSON or a
+ * quake feed), so later starts skip the parsing. All the coordinates are kept
+ * in one flat float buffer and all the strings (ids, property names and
+ * values) in one string table; the features only hold offsets into them.
+ * The snapshot is memory-mapped when read.
+ * <p>
+ * A snapshot records the size and the CRC32 of the file it was made from,
+ * and is ignored (and written again) when the file changed.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class GeoSnapshot {
+
+	/*
+	 * Parses the source file, when there is no valid snapshot.
+	 */
+	public interface Parser {
+		List<? extends Feature> parse();
+	}
+
+	private static final int MAGIC = 0x47534e50;
+	private static final int VERSION = 3;
+	private static final int HEADER_SIZE = 24;
+
+	// Geometry types, by their code in the snapshot
+	private static final FeatureType[] TYPES = { FeatureType.POINT, FeatureType.LINES, FeatureType.POLYGON,
+			FeatureType.MULTI };
+
+	// Kinds of property values
+	private static final byte NULL = 0, STRING = 1, INTEGER = 2, LONG = 3, FLOAT = 4, DOUBLE = 5, BOOLEAN = 6;
+
+	/**
+	 * Loads the features of a data file from its snapshot or, if there is no
+	 * valid snapshot, parses the file and writes the snapshot.
+	 *
+	 * @param source
+	 *            The data file.
+	 * @param snapshot
+	 *            The snapshot file.
+	 * @param parser
+	 *            Parses the data file.
+	 * @return the features.
+	 */
+	public static List<Feature> loadOrParse(File source, File snapshot, Parser parser) {
+		if (source.isFile()) {
+			List<Feature> features = load(source, snapshot);
+			if (features != null)
+				return features;
+		}
+
+		List<Feature> features = new ArrayList<Feature>(parser.parse());
+		if (source.isFile()) {
+			try {
+				save(features, source, snapshot);
+			} catch (IOException e) {
+				System.err.println("Could not save snapshot to " + snapshot + ": " + e.getMessage());
+			}
+		}
+		return features;
+	}
+
+	/**
+	 * Loads the features of a data file from its snapshot.
+	 *
+	 * @param source
+	 *            The data file.
+	 * @param snapshot
+	 *            The snapshot file.
+	 * @return the features, or null if the snapshot is missing, unreadable or
+	 *         was made from another version of the data file.
+	 */
+	public static List<Feature> load(File source, File snapshot) {
+		if (!snapshot.isFile())
+			return null;
+
+		try {
+			// The header is checked before mapping, so a stale snapshot is not
+			// kept mapped while it is written again
+			DataInputStream in = new DataInputStream(new FileInputStream(snapshot));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != source.length()
+						|| in.readLong() != checksum(source))
+					return null;
+			} finally {
+				in.close();
+			}
+
+			RandomAccessFile file = new RandomAccessFile(snapshot, "r");
+			try {
+				FileChannel channel = file.getChannel();
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				buffer.position(HEADER_SIZE);
+				return read(buffer);
+			} finally {
+				file.close();
+			}
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Could not load snapshot from " + snapshot + ": " + e);
+			return null;
+		}
+	}
+
+	private static List<Feature> read(ByteBuffer buffer) {
+		// String table
+		String[] strings = new String[buffer.getInt()];
+		for (int i = 0; i < strings.length; i++) {
+			byte[] bytes = new byte[buffer.getInt()];
+			buffer.get(bytes);
+			strings[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		// Coordinates, as interleaved lat/lon pairs
+		float[] coords = new float[buffer.getInt()];
+		buffer.asFloatBuffer().get(coords);
+		buffer.position(buffer.position() + 4 * coords.length);
+
+		// Features
+		int count = buffer.getInt();
+		List<Feature> features = new ArrayList<Feature>(count);
+		for (int f = 0; f < count; f++) {
+			Feature feature = readGeometry(buffer, coords);
+
+			int id = buffer.getInt();
+			if (id >= 0)
+				feature.setId(strings[id]);
+
+			int properties = buffer.getInt();
+			HashMap<String, Object> map = new HashMap<String, Object>(properties * 2);
+			for (int p = 0; p < properties; p++) {
+				String key = strings[buffer.getInt()];
+				byte kind = buffer.get();
+				switch (kind) {
+				case STRING:
+					map.put(key, strings[buffer.getInt()]);
+					break;
+				case INTEGER:
+					map.put(key, buffer.getInt());
+					break;
+				case LONG:
+					map.put(key, buffer.getLong());
+					break;
+				case FLOAT:
+					map.put(key, buffer.getFloat());
+					break;
+				case DOUBLE:
+					map.put(key, buffer.getDouble());
+					break;
+				case BOOLEAN:
+					map.put(key, buffer.get() != 0);
+					break;
+				default:
+					map.put(key, null);
+				}
+			}
+			feature.setProperties(map);
+			features.add(feature);
+		}
+		return features;
+	}
+
+	private static Feature readGeometry(ByteBuffer buffer, float[] coords) {
+		FeatureType type = TYPES[buffer.get()];
+		if (type == FeatureType.MULTI) {
+			MultiFeature multi = new MultiFeature();
+			int parts = buffer.getInt();
+			for (int p = 0; p < parts; p++)
+				multi.addFeature(readGeometry(buffer, coords));
+			return multi;
+		}
+
+		int offset = buffer.getInt(), count = buffer.getInt();
+		if (type == FeatureType.POINT)
+			return new PointFeature(new Location(coords[offset], coords[offset + 1]));
+
+		ShapeFeature shape = new ShapeFeature(type);
+		for (int i = 0; i < count; i++)
+			shape.addLocation(new Location(coords[offset + 2 * i], coords[offset + 2 * i + 1]));
+		return shape;
+	}
+
+	/**
+	 * Writes the snapshot of the features of a data file.
+	 *
+	 * @param features
+	 *            The features parsed from the data file.
+	 * @param source
+	 *            The data file.
+	 * @param snapshot
+	 *            The snapshot file.
+	 * @throws IOException
+	 *             if the snapshot cannot be written.
+	 */
+	public static void save(List<? extends Feature> features, File source, File snapshot) throws IOException {
+		// Collect the strings and coordinates first, as they come before the
+		// features
+		Map<String, Integer> strings = new HashMap<String, Integer>();
+		List<String> stringList = new ArrayList<String>();
+		FloatList coords = new FloatList();
+		for (Feature feature : features) {
+			collect(feature, coords);
+			if (feature.getId() != null)
+				intern(feature.getId(), strings, stringList);
+			for (Map.Entry<String, Object> property : feature.getProperties().entrySet()) {
+				intern(property.getKey(), strings, stringList);
+				if (kindOf(property.getValue()) == STRING)
+					intern(property.getValue().toString(), strings, stringList);
+			}
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshot)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(source.length());
+			out.writeLong(checksum(source));
+
+			out.writeInt(stringList.size());
+			for (String s : stringList) {
+				byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			out.writeInt(coords.size);
+			for (int i = 0; i < coords.size; i++)
+				out.writeFloat(coords.values[i]);
+
+			out.writeInt(features.size());
+			int[] offset = { 0 };
+			for (Feature feature : features) {
+				writeGeometry(out, feature, offset);
+				out.writeInt(feature.getId() == null ? -1 : strings.get(feature.getId()));
+
+				out.writeInt(feature.getProperties().size());
+				for (Map.Entry<String, Object> property : feature.getProperties().entrySet()) {
+					out.writeInt(strings.get(property.getKey()));
+					Object value = property.getValue();
+					byte kind = kindOf(value);
+					out.writeByte(kind);
+					switch (kind) {
+					case STRING:
+						out.writeInt(strings.get(value.toString()));
+						break;
+					case INTEGER:
+						out.writeInt((Integer) value);
+						break;
+					case LONG:
+						out.writeLong((Long) value);
+						break;
+					case FLOAT:
+						out.writeFloat((Float) value);
+						break;
+					case DOUBLE:
+						out.writeDouble((Double) value);
+						break;
+					case BOOLEAN:
+						out.writeByte((Boolean) value ? 1 : 0);
+						break;
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	// Values of other types are kept as strings
+	private static byte kindOf(Object value) {
+		if (value == null)
+			return NULL;
+		if (value instanceof Integer)
+			return INTEGER;
+		if (value instanceof Long)
+			return LONG;
+		if (value instanceof Float)
+			return FLOAT;
+		if (value instanceof Double)
+			return DOUBLE;
+		if (value instanceof Boolean)
+			return BOOLEAN;
+		return STRING;
+	}
+
+	private static void intern(String s, Map<String, Integer> strings, List<String> stringList) {
+		if (!strings.containsKey(s)) {
+			strings.put(s, stringList.size());
+			stringList.add(s);
+		}
+	}
+
+	// Appends the coordinates of a feature, in the order writeGeometry uses
+	private static void collect(Feature feature, FloatList coords) {
+		if (feature instanceof MultiFeature) {
+			for (Feature part : ((MultiFeature) feature).getFeatures())
+				collect(part, coords);
+		} else if (feature instanceof PointFeature) {
+			coords.add(((PointFeature) feature).getLocation());
+		} else {
+			for (Location loc : ((ShapeFeature) feature).getLocations())
+				coords.add(loc);
+		}
+	}
+
+	private static void writeGeometry(DataOutputStream out, Feature feature, int[] offset) throws IOException {
+		out.writeByte(Arrays.asList(TYPES).indexOf(feature.getType()));
+		if (feature instanceof MultiFeature) {
+			List<Feature> parts = ((MultiFeature) feature).getFeatures();
+			out.writeInt(parts.size());
+			for (Feature part : parts)
+				writeGeometry(out, part, offset);
+			return;
+		}
+
+		int count = feature instanceof PointFeature ? 1 : ((ShapeFeature) feature).getLocations().size();
+		out.writeInt(offset[0]);
+		out.writeInt(count);
+		offset[0] += 2 * count;
+	}
+
+	// CRC32 of the whole file
+	private static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	// Growable array of floats
+	private static class FloatList {
+		float[] values = new float[1024];
+		int size;
+
+		void add(Location loc) {
+			if (size + 2 > values.length)
+				values = Arrays.copyOf(values, 2 * values.length);
+			values[size++] = loc.getLat();
+			values[size++] = loc.getLon();
+		}
+	}
+}
@@ -10,10 +10,10 @@ import processing.core.PGraphics;
  */
 public class LandQuakeMarker extends EarthquakeMarker {
 
-	public LandQuakeMarker(PointFeature quake) {
+	public LandQuakeMarker(PointFeature quake, QuakeStore store) {
 
 		// calling EarthquakeMarker constructor
-		super(quake);
+		super(quake, store);
 
 		// setting field in earthquake marker
 		isOnLand = true;
@@ -31,9 +31,4 @@ public class LandQuakeMarker extends EarthquakeMarker {
 
 	}
 
-	// Get the country the earthquake is in
-	public String getCountry() {
-		return (String) getProperty("country");
-	}
-
 }
\ No newline at end of file
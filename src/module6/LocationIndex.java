@@ -0,0 +1,212 @@
+package module6;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/**
+ * Spatial index of marker locations for radius queries in km. Locations are
+ * stored as unit vectors on the sphere in a k-d tree, so a query for all the
+ * markers within a distance of a location is a query for the vectors within
+ * the matching chord length. Working on the sphere means there is nothing
+ * special about the antimeridian or the poles.
+ * <p>
+ * The tree only selects candidates; they are then checked with the same
+ * distance the markers use (<code>getDistanceTo</code>), so the results are
+ * the ones of a loop over all markers.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class LocationIndex {
+
+	// Same Earth radius as the distances of the map library
+	private static final double EARTH_RADIUS_KM = 6371.01;
+	// Extra chord length for rounding errors, the exact check follows
+	private static final double CHORD_MARGIN = 1e-6;
+
+	private List<? extends Marker> markers;
+
+	// Tree nodes in implicit layout: the node of the range [lo, hi) is at
+	// the middle of the range. Coordinates and marker index of each node
+	private double[] x, y, z;
+	private int[] marker;
+	private byte[] axis;
+
+	/**
+	 * Builds the index of a list of markers.
+	 *
+	 * @param markers
+	 *            The markers to be indexed.
+	 */
+	public LocationIndex(List<? extends Marker> markers) {
+		this.markers = markers;
+
+		int n = markers.size();
+		x = new double[n];
+		y = new double[n];
+		z = new double[n];
+		marker = new int[n];
+		axis = new byte[n];
+
+		for (int i = 0; i < n; i++) {
+			Location loc = markers.get(i).getLocation();
+			double lat = Math.toRadians(loc.getLat()), lon = Math.toRadians(loc.getLon());
+			x[i] = Math.cos(lat) * Math.cos(lon);
+			y[i] = Math.cos(lat) * Math.sin(lon);
+			z[i] = Math.sin(lat);
+			marker[i] = i;
+		}
+
+		build(0, n);
+	}
+
+	// Splits the range on the axis with the widest spread
+	private void build(int lo, int hi) {
+		if (hi - lo < 2) {
+			return;
+		}
+
+		double[] min = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+		double[] max = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+		for (int i = lo; i < hi; i++) {
+			for (int a = 0; a < 3; a++) {
+				min[a] = Math.min(min[a], coord(a, i));
+				max[a] = Math.max(max[a], coord(a, i));
+			}
+		}
+		byte split = 0;
+		for (byte a = 1; a < 3; a++)
+			if (max[a] - min[a] > max[split] - min[split])
+				split = a;
+
+		int mid = (lo + hi) >>> 1;
+		select(split, lo, hi - 1, mid);
+		axis[mid] = split;
+
+		build(lo, mid);
+		build(mid + 1, hi);
+	}
+
+	private double coord(int a, int i) {
+		return a == 0 ? x[i] : a == 1 ? y[i] : z[i];
+	}
+
+	// Quickselect: moves the k-th smallest node on an axis to position k
+	private void select(int a, int lo, int hi, int k) {
+		while (hi > lo) {
+			double pivot = coord(a, (lo + hi) >>> 1);
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (coord(a, i) < pivot)
+					i++;
+				while (coord(a, j) > pivot)
+					j--;
+				if (i <= j)
+					swap(i++, j--);
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	private void swap(int i, int j) {
+		double t = x[i];
+		x[i] = x[j];
+		x[j] = t;
+		t = y[i];
+		y[i] = y[j];
+		y[j] = t;
+		t = z[i];
+		z[i] = z[j];
+		z[j] = t;
+		int m = marker[i];
+		marker[i] = marker[j];
+		marker[j] = m;
+	}
+
+	/**
+	 * Finds the markers within a distance of a location.
+	 *
+	 * @param center
+	 *            The location in the center of the query.
+	 * @param radiusKm
+	 *            The distance in km.
+	 * @param result
+	 *            Bits are set for the indices (in the indexed list) of the
+	 *            markers found.
+	 */
+	public void query(Location center, double radiusKm, BitSet result) {
+		double angle = radiusKm / EARTH_RADIUS_KM;
+		double lat = Math.toRadians(center.getLat()), lon = Math.toRadians(center.getLon());
+		double cx = Math.cos(lat) * Math.cos(lon), cy = Math.cos(lat) * Math.sin(lon), cz = Math.sin(lat);
+
+		// Chord length matching the distance; beyond half a turn, all the
+		// sphere is within reach
+		double chord = angle >= Math.PI ? 2 : 2 * Math.sin(angle / 2);
+		chord += CHORD_MARGIN;
+
+		query(0, x.length, cx, cy, cz, chord * chord, chord, center, radiusKm, result);
+	}
+
+	private void query(int lo, int hi, double cx, double cy, double cz, double chord2, double chord,
+			Location center, double radiusKm, BitSet result) {
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			double dx = x[mid] - cx, dy = y[mid] - cy, dz = z[mid] - cz;
+			if (dx * dx + dy * dy + dz * dz <= chord2
+					&& markers.get(marker[mid]).getDistanceTo(center) <= radiusKm)
+				result.set(marker[mid]);
+
+			if (hi - lo == 1)
+				return;
+
+			int a = axis[mid];
+			double diff = (a == 0 ? cx : a == 1 ? cy : cz) - coord(a, mid);
+
+			// Search the near side, and the far side only if the query ball
+			// crosses the splitting plane
+			if (diff <= 0) {
+				if (diff >= -chord)
+					query(mid + 1, hi, cx, cy, cz, chord2, chord, center, radiusKm, result);
+				hi = mid;
+			} else {
+				if (diff <= chord)
+					query(lo, mid, cx, cy, cz, chord2, chord, center, radiusKm, result);
+				lo = mid + 1;
+			}
+		}
+	}
+
+	/**
+	 * Finds the markers within a distance of a location.
+	 *
+	 * @param center
+	 *            The location in the center of the query.
+	 * @param radiusKm
+	 *            The distance in km.
+	 * @return the markers found, in the order of the indexed list.
+	 */
+	public List<Marker> query(Location center, double radiusKm) {
+		BitSet found = new BitSet(markers.size());
+		query(center, radiusKm, found);
+
+		List<Marker> result = new ArrayList<Marker>(found.cardinality());
+		for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1))
+			result.add(markers.get(i));
+		return result;
+	}
+
+	/**
+	 * @return the number of markers indexed.
+	 */
+	public int size() {
+		return markers.size();
+	}
+}
@@ -0,0 +1,149 @@
+package module6;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Quake indices ordered by magnitude, largest first; quakes of the same
+ * magnitude are ordered by index, as a stable sort of the quakes would. The
+ * order is kept in a sorted array of primitive keys, each one holding the
+ * magnitude and the index of a quake, so it is updated in place as quakes
+ * are added or removed and the marker list is never reordered.
+ * <p>
+ * Quakes added are kept apart until the order is next read; they are then
+ * sorted and merged into the array at once, so loading n quakes costs
+ * O(n log n), and a quake added by a feed update costs one merge.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class MagnitudeIndex {
+
+	// Sorted keys: the magnitude in the high half, in an int order where
+	// larger magnitudes come first, and the quake index in the low half
+	private long[] keys = new long[16];
+	private int size;
+
+	// Keys of the quakes added since the last merge, in any order
+	private long[] addedKeys = new long[16];
+	private int added;
+
+	// Key of each quake index in the index, which ones are in it and which
+	// ones are not merged yet
+	private long[] keyOf = new long[16];
+	private BitSet present = new BitSet(), pending = new BitSet();
+
+	/**
+	 * Adds a quake, or moves it if its magnitude changed.
+	 *
+	 * @param index
+	 *            The quake index in the store.
+	 * @param magnitude
+	 *            The quake magnitude.
+	 */
+	public void add(int index, float magnitude) {
+		if (present.get(index))
+			remove(index);
+
+		long key = key(index, magnitude);
+		if (added == addedKeys.length)
+			addedKeys = Arrays.copyOf(addedKeys, added + (added >> 1));
+		addedKeys[added++] = key;
+
+		if (index >= keyOf.length)
+			keyOf = Arrays.copyOf(keyOf, Math.max(index + 1, keyOf.length + (keyOf.length >> 1)));
+		keyOf[index] = key;
+		present.set(index);
+		pending.set(index);
+	}
+
+	/**
+	 * Removes a quake, if it is in the index.
+	 *
+	 * @param index
+	 *            The quake index in the store.
+	 */
+	public void remove(int index) {
+		if (!present.get(index))
+			return;
+
+		if (pending.get(index)) {
+			// Not merged yet: the last key added takes its place
+			int pos = 0;
+			while (addedKeys[pos] != keyOf[index])
+				pos++;
+			addedKeys[pos] = addedKeys[--added];
+			pending.clear(index);
+		} else {
+			int pos = Arrays.binarySearch(keys, 0, size, keyOf[index]);
+			System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+			size--;
+		}
+		present.clear(index);
+	}
+
+	// Sorts the keys added and merges them into the sorted array
+	private void merge() {
+		if (added == 0)
+			return;
+
+		Arrays.sort(addedKeys, 0, added);
+
+		// Merged from the end, so the sorted array is filled in place
+		if (size + added > keys.length)
+			keys = Arrays.copyOf(keys, Math.max(size + added, keys.length + (keys.length >> 1)));
+		int i = size - 1, j = added - 1;
+		for (int pos = size + added - 1; j >= 0; pos--)
+			keys[pos] = i >= 0 && keys[i] > addedKeys[j] ? keys[i--] : addedKeys[j--];
+		size += added;
+		added = 0;
+		pending.clear();
+	}
+
+	// Flipping the bits of a negative float gives an int order matching the
+	// float order; the magnitude is negated so the largest comes first
+	private static long key(int index, float magnitude) {
+		int bits = Float.floatToIntBits(-magnitude);
+		if (bits < 0)
+			bits ^= 0x7fffffff;
+		return ((long) bits << 32) | (index & 0xffffffffL);
+	}
+
+	/**
+	 * @param rank
+	 *            The position in magnitude order, from 0.
+	 * @return the quake index at that position.
+	 */
+	public int get(int rank) {
+		merge();
+		return (int) keys[rank];
+	}
+
+	/**
+	 * Finds the largest quakes among a set of quakes.
+	 *
+	 * @param k
+	 *            The number of quakes wanted.
+	 * @param filter
+	 *            The quakes which can be chosen, by index.
+	 * @param result
+	 *            Bits are set for the indices of the k largest quakes in the
+	 *            filter (fewer if the filter has fewer quakes).
+	 */
+	public void topK(int k, BitSet filter, BitSet result) {
+		merge();
+		for (int rank = 0, n = 0; rank < size && n < k; rank++) {
+			int index = (int) keys[rank];
+			if (filter.get(index)) {
+				result.set(index);
+				n++;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of quakes in the index.
+	 */
+	public int size() {
+		return size + added;
+	}
+}
@@ -0,0 +1,59 @@
+package module6;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.utils.ScreenPosition;
+
+/**
+ * Snapshot of the transform (zoom and pan) of an <code>UnfoldingMap</code>,
+ * used as a cache key for geometry projected to the screen. The transform is
+ * identified by the screen positions of two fixed reference locations: any
+ * zoom or pan moves at least one of them.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public final class MapView {
+
+	// Reference locations
+	private static final Location REF_A = new Location(0, 0);
+	private static final Location REF_B = new Location(45, 90);
+
+	private final float ax, ay, bx, by;
+
+	private MapView(float ax, float ay, float bx, float by) {
+		this.ax = ax;
+		this.ay = ay;
+		this.bx = bx;
+		this.by = by;
+	}
+
+	/**
+	 * @param map
+	 *            The map.
+	 * @return the current transform of the map.
+	 */
+	public static MapView of(UnfoldingMap map) {
+		ScreenPosition a = map.getScreenPosition(REF_A);
+		ScreenPosition b = map.getScreenPosition(REF_B);
+		return new MapView(a.x, a.y, b.x, b.y);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof MapView))
+			return false;
+		MapView view = (MapView) obj;
+		return ax == view.ax && ay == view.ay && bx == view.bx && by == view.by;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = Float.floatToIntBits(ax);
+		hash = 31 * hash + Float.floatToIntBits(ay);
+		hash = 31 * hash + Float.floatToIntBits(bx);
+		hash = 31 * hash + Float.floatToIntBits(by);
+		return hash;
+	}
+}
@@ -0,0 +1,170 @@
+package module6;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+/**
+ * Texture atlas of marker images, for drawing many markers in one batch. The
+ * image of a marker (its glyph) is drawn once into the atlas the first time
+ * its glyph key is seen; markers with the same key (shape, depth color, size
+ * and highlight) then share it. Drawing markers is one textured QUADS shape,
+ * one quad per marker, which the OpenGL renderer sends as a single batch
+ * instead of a style change and a shape per marker.
+ * <p>
+ * Glyphs are packed in rows. When the atlas is full, the markers of new keys
+ * are left for the caller to draw as vectors, as are the markers with a
+ * negative key.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class MarkerAtlas {
+
+	// Empty pixels around every glyph, so sampling does not bleed
+	private static final int PADDING = 1;
+
+	private PGraphics image;
+
+	// Glyph slots by key, and the square of each slot in the atlas
+	private Map<Integer, Integer> slots = new HashMap<Integer, Integer>();
+	private int[] slotX = new int[64], slotY = new int[64], slotSize = new int[64];
+	private int slotCount;
+
+	// Row being filled
+	private int rowX, rowY, rowHeight;
+	private boolean full;
+
+	/**
+	 * Construct an empty atlas.
+	 *
+	 * @param app
+	 *            The applet the atlas is drawn in.
+	 * @param size
+	 *            Width and height of the atlas texture.
+	 */
+	public MarkerAtlas(PApplet app, int size) {
+		image = app.createGraphics(size, size, PApplet.P2D);
+	}
+
+	/**
+	 * Draws into the atlas the glyphs of the markers not already there.
+	 *
+	 * @param markers
+	 *            The markers about to be drawn.
+	 * @param count
+	 *            The number of markers used from the list.
+	 */
+	public void prepare(List<CommonMarker> markers, int count) {
+		boolean drawing = false;
+		for (int i = 0; i < count && !full; i++) {
+			CommonMarker marker = markers.get(i);
+			int key = marker.getGlyphKey();
+			if (key < 0 || slots.containsKey(key))
+				continue;
+
+			int size = 2 * (int) Math.ceil(marker.getGlyphExtent()) + 2 * PADDING;
+			if (!allocate(size))
+				break;
+			if (!drawing) {
+				image.beginDraw();
+				drawing = true;
+			}
+			marker.drawMarker(image, slotX[slotCount] + size / 2f, slotY[slotCount] + size / 2f);
+			slots.put(key, slotCount++);
+		}
+		if (drawing)
+			image.endDraw();
+	}
+
+	// Finds room for a new slot, in the current row or a new one
+	private boolean allocate(int size) {
+		if (rowX + size > image.width) {
+			rowX = 0;
+			rowY += rowHeight;
+			rowHeight = 0;
+		}
+		if (rowY + size > image.height) {
+			full = true;
+			return false;
+		}
+
+		if (slotCount == slotX.length) {
+			slotX = Arrays.copyOf(slotX, 2 * slotCount);
+			slotY = Arrays.copyOf(slotY, 2 * slotCount);
+			slotSize = Arrays.copyOf(slotSize, 2 * slotCount);
+		}
+		slotX[slotCount] = rowX;
+		slotY[slotCount] = rowY;
+		slotSize[slotCount] = size;
+		rowX += size;
+		rowHeight = Math.max(rowHeight, size);
+		return true;
+	}
+
+	/**
+	 * @param marker
+	 *            A marker.
+	 * @return true if the glyph of the marker is in the atlas.
+	 */
+	public boolean contains(CommonMarker marker) {
+		return slots.containsKey(marker.getGlyphKey());
+	}
+
+	/**
+	 * Draws a range of markers from their glyphs, as one batch. Markers whose
+	 * glyph is not in the atlas are skipped.
+	 *
+	 * @param pg
+	 *            The PGraphics object to be used as a graphics buffer.
+	 * @param markers
+	 *            The markers to be drawn, in drawing order.
+	 * @param xs
+	 *            x-coordinates of the markers.
+	 * @param ys
+	 *            y-coordinates of the markers.
+	 * @param from
+	 *            The first marker drawn from the list.
+	 * @param to
+	 *            The end of the range drawn from the list (exclusive).
+	 */
+	public void draw(PGraphics pg, List<CommonMarker> markers, float[] xs, float[] ys, int from, int to) {
+		pg.pushStyle();
+		pg.noStroke();
+		pg.textureMode(PApplet.IMAGE);
+		pg.beginShape(PApplet.QUADS);
+		pg.texture(image);
+		for (int i = from; i < to; i++) {
+			Integer slot = slots.get(markers.get(i).getGlyphKey());
+			if (slot == null)
+				continue;
+
+			int u = slotX[slot], v = slotY[slot], size = slotSize[slot];
+			float x = xs[i] - size / 2f, y = ys[i] - size / 2f;
+			pg.vertex(x, y, u, v);
+			pg.vertex(x + size, y, u + size, v);
+			pg.vertex(x + size, y + size, u + size, v + size);
+			pg.vertex(x, y + size, u, v + size);
+		}
+		pg.endShape();
+		pg.popStyle();
+	}
+
+	/**
+	 * @return true if a glyph did not fit in the atlas, so the markers of new
+	 *         keys are left out.
+	 */
+	public boolean isFull() {
+		return full;
+	}
+
+	/**
+	 * @return the number of glyphs in the atlas.
+	 */
+	public int size() {
+		return slotCount;
+	}
+}
@@ -0,0 +1,185 @@
+package module6;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.ScreenPosition;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+/**
+ * A layer of markers rendered into an offscreen image of the map area. The
+ * markers are only drawn again when the map transform changes (pan or zoom)
+ * or when the markers change (hidden, shown, added, removed or restyled);
+ * otherwise drawing the layer is a single image copy, whatever the number of
+ * markers.
+ * <p>
+ * With a marker atlas, the markers are drawn from their glyphs in the atlas
+ * as one batch, instead of one by one as vectors. Markers left out of the
+ * atlas are drawn as vectors between the batches before and after them, so
+ * the list order holds either way.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class MarkerLayer {
+
+	// Markers this far outside the map area may still show a part
+	private static final float MARGIN = 30;
+
+	private PGraphics buffer;
+	private float left, top;
+	private List<? extends Marker> markers;
+
+	// Map transform and markers version the image was rendered for
+	private MapView view;
+	private int version;
+
+	private long renders;
+
+	// Batched drawing: the atlas, and the markers in the map area with their
+	// positions
+	private MarkerAtlas atlas;
+	private List<CommonMarker> shown = new ArrayList<CommonMarker>();
+	private float[] xs = new float[256], ys = new float[256];
+
+	/**
+	 * Construct a layer for the screen area of a map.
+	 *
+	 * @param app
+	 *            The applet the layer is drawn in.
+	 * @param left
+	 *            x-coordinate of the map.
+	 * @param top
+	 *            y-coordinate of the map.
+	 * @param width
+	 *            width of the map.
+	 * @param height
+	 *            height of the map.
+	 * @param markers
+	 *            The markers of the layer, drawn in list order.
+	 */
+	public MarkerLayer(PApplet app, float left, float top, int width, int height, List<? extends Marker> markers) {
+		this.left = left;
+		this.top = top;
+		this.markers = markers;
+		buffer = app.createGraphics(width, height, PApplet.P2D);
+	}
+
+	/**
+	 * Renders the markers again if the map transform or the markers changed
+	 * since the last render.
+	 *
+	 * @param map
+	 *            The map the markers are drawn on.
+	 * @param markersVersion
+	 *            A number which changes whenever the markers change.
+	 * @return true if the markers were rendered again.
+	 */
+	public boolean update(UnfoldingMap map, int markersVersion) {
+		MapView current = MapView.of(map);
+		if (current.equals(view) && markersVersion == version)
+			return false;
+		view = current;
+		version = markersVersion;
+		renders++;
+
+		// Markers in the map area, in drawing order
+		shown.clear();
+		for (Marker marker : markers) {
+			if (marker.isHidden())
+				continue;
+			ScreenPosition pos = map.getScreenPosition(marker.getLocation());
+			float x = pos.x - left, y = pos.y - top;
+			if (x < -MARGIN || y < -MARGIN || x > buffer.width + MARGIN || y > buffer.height + MARGIN)
+				continue;
+			int n = shown.size();
+			if (n == xs.length) {
+				xs = Arrays.copyOf(xs, 2 * n);
+				ys = Arrays.copyOf(ys, 2 * n);
+			}
+			xs[n] = x;
+			ys[n] = y;
+			shown.add((CommonMarker) marker);
+		}
+
+		int count = shown.size();
+		if (atlas != null)
+			atlas.prepare(shown, count);
+
+		buffer.beginDraw();
+		buffer.clear();
+		if (atlas != null) {
+			// Runs of markers in the atlas are batches, the markers left out
+			// are drawn in between
+			int from = 0;
+			for (int i = 0; i < count; i++) {
+				if (atlas.contains(shown.get(i)))
+					continue;
+				if (from < i)
+					atlas.draw(buffer, shown, xs, ys, from, i);
+				shown.get(i).draw(buffer, xs[i], ys[i]);
+				from = i + 1;
+			}
+			if (from < count)
+				atlas.draw(buffer, shown, xs, ys, from, count);
+		} else {
+			for (int i = 0; i < count; i++)
+				shown.get(i).draw(buffer, xs[i], ys[i]);
+		}
+		buffer.endDraw();
+		return true;
+	}
+
+	/**
+	 * Sets the markers of the layer. The rendered image is forgotten if they
+	 * are another list.
+	 *
+	 * @param markers
+	 *            The markers of the layer, drawn in list order.
+	 */
+	public void setMarkers(List<? extends Marker> markers) {
+		if (markers != this.markers) {
+			this.markers = markers;
+			invalidate();
+		}
+	}
+
+	/**
+	 * Sets the atlas the markers are drawn from, and forgets the rendered
+	 * image.
+	 *
+	 * @param atlas
+	 *            The marker atlas, or null to draw the markers as vectors.
+	 */
+	public void setAtlas(MarkerAtlas atlas) {
+		this.atlas = atlas;
+		invalidate();
+	}
+
+	/**
+	 * Forgets the rendered image, so the next update renders the markers.
+	 */
+	public void invalidate() {
+		view = null;
+	}
+
+	/**
+	 * Draws the rendered image of the markers.
+	 *
+	 * @param pg
+	 *            The PGraphics object to be used as a graphics buffer.
+	 */
+	public void draw(PGraphics pg) {
+		pg.image(buffer, left, top);
+	}
+
+	/**
+	 * @return the number of times the markers were rendered.
+	 */
+	public long getRenders() {
+		return renders;
+	}
+}
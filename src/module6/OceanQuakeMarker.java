@@ -10,8 +10,8 @@ import processing.core.PGraphics;
  */
 public class OceanQuakeMarker extends EarthquakeMarker {
 
-	public OceanQuakeMarker(PointFeature quake) {
-		super(quake);
+	public OceanQuakeMarker(PointFeature quake, QuakeStore store) {
+		super(quake, store);
 
 		// setting field in earthquake marker
 		isOnLand = false;
@@ -11,9 +11,6 @@ import processing.core.PGraphics;
  * @version 2015-11-15
  */
 public class OptionControl extends GUIControl {
-	/** Serialization ID */
-	private static final long serialVersionUID = 0;
-
 	private OptionGroup refToGroup;
 
 	public static int RADIUS = 11;
@@ -121,7 +118,7 @@ public class OptionControl extends GUIControl {
 	 * @return the height of the option control, including label.
 	 */
 	public int controlHeight() {
-		return (int) max(getLabelHeight(), 2 * RADIUS);
+		return Math.max(getLabelHeight(), 2 * RADIUS);
 	}
 
 	/**
@@ -0,0 +1,167 @@
+package module6;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.ScreenPosition;
+
+/**
+ * Screen-space bucket grid of the visible markers, used to find the marker
+ * under the mouse cursor. The screen positions of the markers are projected
+ * once and bucketed in square cells; picking then only checks the markers of
+ * the cell under the cursor. The grid is built again only when the map
+ * transform or the visibility of the markers changed.
+ * <p>
+ * Markers are picked in the order of the lists given: the first marker
+ * containing the cursor wins, as in a loop over the lists.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class PickGrid {
+
+	// Size of the grid cells, in pixels
+	private static final int CELL_SIZE = 32;
+
+	// Screen area of the map
+	private float left, top;
+	private int columns, rows;
+
+	// Key of the current grid
+	private MapView view;
+	private int visibilityVersion = -1;
+
+	// Visible markers on the map area, in picking order, with their screen
+	// position and radius
+	private CommonMarker[] markers = new CommonMarker[0];
+	private float[] xs = new float[0], ys = new float[0], rs = new float[0];
+	private int count;
+
+	// Marker positions per cell: the markers of cell c are
+	// cellMarkers[cellStart[c]] to cellMarkers[cellStart[c + 1] - 1]
+	private int[] cellStart;
+	private int[] cellMarkers = new int[0];
+
+	/**
+	 * Construct an empty PickGrid object for the screen area of a map.
+	 *
+	 * @param left
+	 *            x-coordinate of the map.
+	 * @param top
+	 *            y-coordinate of the map.
+	 * @param width
+	 *            width of the map.
+	 * @param height
+	 *            height of the map.
+	 */
+	public PickGrid(float left, float top, float width, float height) {
+		this.left = left;
+		this.top = top;
+		columns = (int) Math.ceil(width / CELL_SIZE);
+		rows = (int) Math.ceil(height / CELL_SIZE);
+		cellStart = new int[columns * rows + 1];
+	}
+
+	/**
+	 * Builds the grid again if the map transform or the visibility of the
+	 * markers changed since it was built.
+	 *
+	 * @param map
+	 *            The map the markers are drawn on.
+	 * @param version
+	 *            A number which changes whenever markers are hidden or shown.
+	 * @param layers
+	 *            The lists of markers, in picking order.
+	 */
+	@SafeVarargs
+	public final void update(UnfoldingMap map, int version, List<? extends Marker>... layers) {
+		MapView current = MapView.of(map);
+		if (version == visibilityVersion && current.equals(view))
+			return;
+		view = current;
+		visibilityVersion = version;
+
+		int total = 0;
+		for (List<? extends Marker> layer : layers)
+			total += layer.size();
+		if (markers.length < total) {
+			markers = new CommonMarker[total];
+			xs = new float[total];
+			ys = new float[total];
+			rs = new float[total];
+		}
+
+		// Project the visible markers on the map area
+		float right = left + columns * CELL_SIZE, bottom = top + rows * CELL_SIZE;
+		count = 0;
+		for (List<? extends Marker> layer : layers)
+			for (Marker marker : layer) {
+				if (marker.isHidden())
+					continue;
+				CommonMarker common = (CommonMarker) marker;
+				ScreenPosition pos = map.getScreenPosition(marker.getLocation());
+				float r = common.getPickRadius();
+				if (pos.x + r < left || pos.x - r >= right || pos.y + r < top || pos.y - r >= bottom)
+					continue;
+				markers[count] = common;
+				xs[count] = pos.x;
+				ys[count] = pos.y;
+				rs[count] = r;
+				count++;
+			}
+
+		// Count the markers of each cell, then fill the cells in marker order
+		Arrays.fill(cellStart, 0);
+		int entries = 0;
+		for (int i = 0; i < count; i++)
+			for (int row = row(ys[i] - rs[i]); row <= row(ys[i] + rs[i]); row++)
+				for (int col = column(xs[i] - rs[i]); col <= column(xs[i] + rs[i]); col++) {
+					cellStart[row * columns + col + 1]++;
+					entries++;
+				}
+		for (int c = 0; c < columns * rows; c++)
+			cellStart[c + 1] += cellStart[c];
+
+		if (cellMarkers.length < entries)
+			cellMarkers = new int[entries];
+		int[] next = new int[columns * rows];
+		for (int i = 0; i < count; i++)
+			for (int row = row(ys[i] - rs[i]); row <= row(ys[i] + rs[i]); row++)
+				for (int col = column(xs[i] - rs[i]); col <= column(xs[i] + rs[i]); col++) {
+					int cell = row * columns + col;
+					cellMarkers[cellStart[cell] + next[cell]++] = i;
+				}
+	}
+
+	private int row(float y) {
+		return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - top) / CELL_SIZE)));
+	}
+
+	private int column(float x) {
+		return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - left) / CELL_SIZE)));
+	}
+
+	/**
+	 * Finds the marker at a screen position, as built by the last update.
+	 *
+	 * @param x
+	 *            x-coordinate to be checked.
+	 * @param y
+	 *            y-coordinate to be checked.
+	 * @return the first visible marker containing the position, or null.
+	 */
+	public CommonMarker pick(float x, float y) {
+		if (x < left || x >= left + columns * CELL_SIZE || y < top || y >= top + rows * CELL_SIZE)
+			return null;
+
+		int cell = row(y) * columns + column(x);
+		for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+			int i = cellMarkers[k];
+			float dx = xs[i] - x, dy = ys[i] - y;
+			if (dx * dx + dy * dy < rs[i] * rs[i])
+				return markers[i];
+		}
+		return null;
+	}
+}
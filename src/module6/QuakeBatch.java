@@ -0,0 +1,85 @@
+package module6;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+/**
+ * Command line entry point of the quake engine, for batch jobs on machines
+ * without a display. The countries are loaded once; then every feed file
+ * given is read, classified and summarized in turn: per-country counts, ocean
+ * total and largest quakes.
+ * <p>
+ * Usage:
+ * <code>QuakeBatch [-countries file.geo.json] [-cache dir] [-top N] feed.atom...</code>
+ * <p>
+ * Feeds which cannot be read or have malformed entries are reported and
+ * skipped; the exit status is 1 if any was.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class QuakeBatch {
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		File countryFile = new File("data/countries.geo.json");
+		File cacheDir = new File(".");
+		int topCount = 10;
+		List<File> feeds = new ArrayList<File>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-countries"))
+					countryFile = new File(args[++i]);
+				else if (args[i].equals("-cache"))
+					cacheDir = new File(args[++i]);
+				else if (args[i].equals("-top"))
+					topCount = Integer.parseInt(args[++i]);
+				else
+					feeds.add(new File(args[i]));
+			}
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			feeds.clear();
+		}
+		if (feeds.isEmpty()) {
+			System.err.println("Usage: QuakeBatch [-countries file.geo.json] [-cache dir] [-top N] feed.atom...");
+			System.exit(2);
+		}
+
+		QuakeEngine engine;
+		try {
+			engine = QuakeEngine.load(countryFile, cacheDir);
+		} catch (IOException e) {
+			System.err.println("Could not load countries from " + countryFile + ": " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		boolean failed = false;
+		for (File feed : feeds) {
+			long begin = System.nanoTime();
+			QuakeEngine.Summary summary;
+			try {
+				List<PointFeature> quakes = QuakeEngine.loadFeed(feed);
+				int[] countries = engine.classify(quakes);
+				summary = engine.summarize(quakes, countries, topCount);
+			} catch (IOException e) {
+				System.err.println("Skipping " + feed + ": " + e.getMessage());
+				failed = true;
+				continue;
+			} catch (RuntimeException e) {
+				// Entries the parser let through, e.g. without magnitude
+				System.err.println("Skipping " + feed + ": " + e);
+				failed = true;
+				continue;
+			}
+
+			System.out.println("== " + feed + " (" + (System.nanoTime() - begin) / 1000000 + " ms) ==");
+			System.out.println(summary);
+		}
+		System.exit(failed ? 1 : 0);
+	}
+}
@@ -0,0 +1,64 @@
+package module6;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+/**
+ * Finds the country of every quake of a feed, splitting the quakes across
+ * the cores with fork/join. The country raster and index are only read, so
+ * the lookups need no locking; the results are written to disjoint ranges of
+ * an array.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class QuakeClassifier extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	// Number of quakes below which a range is not split any more
+	private static final int THRESHOLD = 512;
+
+	private final List<PointFeature> quakes;
+	private final CountryRaster raster;
+	private final int[] countries;
+	private final int lo, hi;
+
+	private QuakeClassifier(List<PointFeature> quakes, CountryRaster raster, int[] countries, int lo, int hi) {
+		this.quakes = quakes;
+		this.raster = raster;
+		this.countries = countries;
+		this.lo = lo;
+		this.hi = hi;
+	}
+
+	/**
+	 * Finds the country of every quake.
+	 *
+	 * @param quakes
+	 *            The quake features.
+	 * @param raster
+	 *            The country raster.
+	 * @return the country of each quake, in the same order, or
+	 *         CountryIndex.NO_COUNTRY for the quakes in the ocean.
+	 */
+	public static int[] classify(List<PointFeature> quakes, CountryRaster raster) {
+		int[] countries = new int[quakes.size()];
+		ForkJoinPool.commonPool().invoke(new QuakeClassifier(quakes, raster, countries, 0, quakes.size()));
+		return countries;
+	}
+
+	@Override
+	protected void compute() {
+		if (hi - lo <= THRESHOLD) {
+			for (int i = lo; i < hi; i++)
+				countries[i] = raster.findCountry(quakes.get(i).getLocation());
+		} else {
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new QuakeClassifier(quakes, raster, countries, lo, mid),
+					new QuakeClassifier(quakes, raster, countries, mid, hi));
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package module6;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/**
+ * Hierarchical clusters of the visible quake markers, one set per zoom
+ * level, in the way of the supercluster library. Quakes are projected to Web
+ * Mercator; from the highest zoom level down, the points of the level above
+ * which are within a fixed screen radius of each other are merged into one
+ * cluster, weighted by their number of quakes. A level thus has at most about
+ * one marker per circle of that radius on the screen, whatever the number of
+ * quakes, and the clusters split when zooming in.
+ * <p>
+ * Above MAX_ZOOM the quakes are shown unclustered. The clusters are built
+ * again only when the visible quakes changed. The grid cells of a level are
+ * an open-addressing table of primitive cell keys, reused by every level.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class QuakeClusters {
+
+	/** Lowest and highest zoom levels with clusters */
+	public static final int MIN_ZOOM = 0, MAX_ZOOM = 16;
+
+	// Cluster radius in pixels, and tile size of the zoom levels
+	private static final double RADIUS = 40;
+	private static final int TILE_SIZE = 256;
+
+	// Markers of each zoom level, and the visible quakes above MAX_ZOOM
+	private List<List<CommonMarker>> levels = new ArrayList<List<CommonMarker>>();
+	private List<CommonMarker> quakes = new ArrayList<CommonMarker>();
+	private int version = -1;
+
+	// Grid cells of the level being built: cell keys and the first point of
+	// each cell, -1 for a free slot; the capacity is a power of two
+	private long[] cellKeys = new long[0];
+	private int[] cellHeads = new int[0];
+
+	/**
+	 * Builds the clusters again if the visible quakes changed since they were
+	 * built.
+	 *
+	 * @param quakeMarkers
+	 *            The quake markers; hidden ones are left out.
+	 * @param quakesVersion
+	 *            A number which changes whenever quakes are hidden, shown,
+	 *            added, removed or moved.
+	 * @return true if the clusters were built again.
+	 */
+	public boolean update(List<? extends Marker> quakeMarkers, int quakesVersion) {
+		if (quakesVersion == version)
+			return false;
+		version = quakesVersion;
+
+		quakes = new ArrayList<CommonMarker>();
+		for (Marker marker : quakeMarkers)
+			if (!marker.isHidden())
+				quakes.add((CommonMarker) marker);
+		build();
+		return true;
+	}
+
+	/**
+	 * @param zoomLevel
+	 *            The zoom level of the map.
+	 * @return the markers of that zoom level: clusters and single quakes. Not
+	 *         to be modified.
+	 */
+	public List<CommonMarker> getMarkers(int zoomLevel) {
+		if (zoomLevel > MAX_ZOOM)
+			return quakes;
+		return levels.get(Math.max(zoomLevel, MIN_ZOOM) - MIN_ZOOM);
+	}
+
+	private void build() {
+		// Points of the level above, starting with the quakes: position,
+		// number of quakes, largest magnitude, quakes per depth class and
+		// marker
+		int n = quakes.size();
+		double[] xs = new double[n], ys = new double[n];
+		int[] counts = new int[n];
+		float[] magnitudes = new float[n];
+		int[] depths = new int[3 * n];
+		CommonMarker[] markers = new CommonMarker[n];
+		for (int i = 0; i < n; i++) {
+			EarthquakeMarker quake = (EarthquakeMarker) quakes.get(i);
+			xs[i] = mercatorX(quake.getLocation().getLon());
+			ys[i] = mercatorY(quake.getLocation().getLat());
+			counts[i] = 1;
+			magnitudes[i] = quake.getMagnitude();
+			depths[3 * i + quake.getDepthClass()] = 1;
+			markers[i] = quake;
+		}
+
+		// Levels have at most as many points as the level above
+		int capacity = Integer.highestOneBit(Math.max(2 * n - 1, 1)) << 1;
+		if (cellKeys.length < capacity) {
+			cellKeys = new long[capacity];
+			cellHeads = new int[capacity];
+		}
+		int[] next = new int[n];
+		boolean[] merged = new boolean[n];
+
+		List<List<CommonMarker>> built = new ArrayList<List<CommonMarker>>();
+		for (int z = MAX_ZOOM; z >= MIN_ZOOM; z--) {
+			double r = RADIUS / (TILE_SIZE * Math.pow(2, z));
+
+			// Grid of cells of the cluster radius, as linked lists of points
+			int mask = Integer.highestOneBit(Math.max(2 * n - 1, 1)) * 2 - 1;
+			Arrays.fill(cellHeads, 0, mask + 1, -1);
+			for (int i = 0; i < n; i++) {
+				int slot = slot(cell((long) (xs[i] / r), (long) (ys[i] / r)), mask);
+				next[i] = cellHeads[slot];
+				cellHeads[slot] = i;
+			}
+
+			// Points of this level
+			double[] nxs = new double[n], nys = new double[n];
+			int[] ncounts = new int[n];
+			float[] nmagnitudes = new float[n];
+			int[] ndepths = new int[3 * n];
+			CommonMarker[] nmarkers = new CommonMarker[n];
+			int m = 0;
+
+			Arrays.fill(merged, 0, n, false);
+			for (int i = 0; i < n; i++) {
+				if (merged[i])
+					continue;
+				merged[i] = true;
+
+				double wx = xs[i] * counts[i], wy = ys[i] * counts[i];
+				int count = counts[i];
+				float magnitude = magnitudes[i];
+				int d0 = depths[3 * i], d1 = depths[3 * i + 1], d2 = depths[3 * i + 2];
+
+				long cx = (long) (xs[i] / r), cy = (long) (ys[i] / r);
+				for (long gx = cx - 1; gx <= cx + 1; gx++)
+					for (long gy = cy - 1; gy <= cy + 1; gy++) {
+						for (int j = cellHeads[slot(cell(gx, gy), mask)]; j >= 0; j = next[j]) {
+							double dx = xs[j] - xs[i], dy = ys[j] - ys[i];
+							if (merged[j] || dx * dx + dy * dy > r * r)
+								continue;
+							merged[j] = true;
+							wx += xs[j] * counts[j];
+							wy += ys[j] * counts[j];
+							count += counts[j];
+							magnitude = Math.max(magnitude, magnitudes[j]);
+							d0 += depths[3 * j];
+							d1 += depths[3 * j + 1];
+							d2 += depths[3 * j + 2];
+						}
+					}
+
+				if (count == counts[i]) {
+					// No neighbor: the point goes down unchanged
+					nxs[m] = xs[i];
+					nys[m] = ys[i];
+					nmarkers[m] = markers[i];
+				} else {
+					nxs[m] = wx / count;
+					nys[m] = wy / count;
+					int depthClass = d2 > d1 && d2 > d0 ? EarthquakeMarker.DEEP
+							: d1 > d0 ? EarthquakeMarker.INTERMEDIATE : EarthquakeMarker.SHALLOW;
+					nmarkers[m] = new ClusterMarker(new Location(latitude(nys[m]), longitude(nxs[m])), count,
+							magnitude, depthClass, z + 1);
+				}
+				ncounts[m] = count;
+				nmagnitudes[m] = magnitude;
+				ndepths[3 * m] = d0;
+				ndepths[3 * m + 1] = d1;
+				ndepths[3 * m + 2] = d2;
+				m++;
+			}
+
+			List<CommonMarker> level = new ArrayList<CommonMarker>(m);
+			for (int i = 0; i < m; i++)
+				level.add(nmarkers[i]);
+			built.add(0, level);
+
+			n = m;
+			xs = nxs;
+			ys = nys;
+			counts = ncounts;
+			magnitudes = nmagnitudes;
+			depths = ndepths;
+			markers = nmarkers;
+		}
+		levels = built;
+	}
+
+	private static long cell(long x, long y) {
+		return x << 32 | (y & 0xffffffffL);
+	}
+
+	// Slot of a cell in the grid table, found by linear probing; a free slot
+	// is taken for the cell
+	private int slot(long cell, int mask) {
+		long h = cell * 0x9E3779B97F4A7C15L;
+		int slot = (int) (h ^ h >>> 32) & mask;
+		while (cellHeads[slot] >= 0 && cellKeys[slot] != cell)
+			slot = slot + 1 & mask;
+		cellKeys[slot] = cell;
+		return slot;
+	}
+
+	// Web Mercator, scaled to [0, 1]
+	private static double mercatorX(double lon) {
+		return (lon + 180) / 360;
+	}
+
+	private static double mercatorY(double lat) {
+		double sin = Math.sin(Math.toRadians(Math.max(-85.0511, Math.min(85.0511, lat))));
+		return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+	}
+
+	private static float longitude(double x) {
+		return (float) (x * 360 - 180);
+	}
+
+	private static float latitude(double y) {
+		return (float) Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y))));
+	}
+}
@@ -0,0 +1,309 @@
+package module6;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.MapUtils;
+import parsing.GeoJSONParser;
+import parsing.ParseFeed;
+
+/**
+ * The loading, classification and aggregation of earthquakes, without any
+ * Processing window: the map uses it once its countries are loaded, and
+ * QuakeBatch runs it from the command line. The countries are loaded once,
+ * then any number of feeds can be classified and summarized.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class QuakeEngine {
+
+	/*
+	 * Per-country counts, ocean total and largest quakes of a feed.
+	 */
+	public static class Summary {
+		private final String[] countryNames;
+		private final int[] countryCounts;
+		private final int total, ocean;
+		private final List<PointFeature> top;
+
+		private Summary(String[] countryNames, int[] countryCounts, int total, int ocean, List<PointFeature> top) {
+			this.countryNames = countryNames;
+			this.countryCounts = countryCounts;
+			this.total = total;
+			this.ocean = ocean;
+			this.top = top;
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		public int getOcean() {
+			return ocean;
+		}
+
+		/**
+		 * @param country
+		 *            The country index.
+		 * @return the number of quakes in the country.
+		 */
+		public int getCount(int country) {
+			return countryCounts[country];
+		}
+
+		/**
+		 * @return the largest quakes, by decreasing magnitude.
+		 */
+		public List<PointFeature> getTop() {
+			return top;
+		}
+
+		/**
+		 * @return the countries with quakes and their counts, one per line,
+		 *         then the ocean total and the largest quakes.
+		 */
+		@Override
+		public String toString() {
+			StringBuilder s = new StringBuilder();
+			for (int c = 0; c < countryCounts.length; c++)
+				if (countryCounts[c] > 0)
+					s.append(countryNames[c]).append(": ").append(countryCounts[c]).append('\n');
+			s.append("OCEAN QUAKES: ").append(ocean).append('\n');
+			s.append("TOTAL QUAKES: ").append(total).append('\n');
+			s.append("TOP ").append(top.size()).append(" QUAKES:\n");
+			for (PointFeature quake : top)
+				s.append(quake.getProperty("title")).append('\n');
+			return s.toString();
+		}
+	}
+
+	private List<Marker> countryMarkers;
+	private CountryRaster countryRaster;
+	private String[] countryNames;
+
+	/**
+	 * Construct an engine for countries already loaded and indexed.
+	 *
+	 * @param countryMarkers
+	 *            The country markers.
+	 * @param countryRaster
+	 *            The raster of the country index built from them.
+	 */
+	public QuakeEngine(List<Marker> countryMarkers, CountryRaster countryRaster) {
+		this.countryMarkers = countryMarkers;
+		this.countryRaster = countryRaster;
+		countryNames = new String[countryMarkers.size()];
+		for (int c = 0; c < countryNames.length; c++)
+			countryNames[c] = countryMarkers.get(c).getStringProperty("name");
+	}
+
+	/**
+	 * Loads and indexes the countries of a GeoJSON file, without a PApplet.
+	 * The parsed countries and their raster are cached in a directory, as the
+	 * map does in its sketch folder.
+	 *
+	 * @param countryFile
+	 *            The GeoJSON file of the countries.
+	 * @param cacheDir
+	 *            The directory of the snapshot and raster files.
+	 * @return the engine.
+	 * @throws IOException
+	 *             if the countries cannot be read.
+	 */
+	public static QuakeEngine load(final File countryFile, File cacheDir) throws IOException {
+		List<Feature> countries;
+		try {
+			countries = GeoSnapshot.loadOrParse(countryFile, new File(cacheDir, countryFile.getName() + ".snapshot"),
+					new GeoSnapshot.Parser() {
+						public List<Feature> parse() {
+							try {
+								return GeoJSONParser.parse(countryFile);
+							} catch (IOException e) {
+								throw new UncheckedIOException(e);
+							}
+						}
+					});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		List<Marker> markers = MapUtils.createSimpleMarkers(countries);
+		CountryIndex index = new CountryIndex(markers);
+		CountryRaster raster = CountryRaster.loadOrBuild(index, new File(cacheDir, "countries.raster"));
+		return new QuakeEngine(markers, raster);
+	}
+
+	/**
+	 * Reads the quakes of a GeoRSS feed file, gzipped if its name ends with
+	 * ".gz".
+	 *
+	 * @param feed
+	 *            The feed file.
+	 * @return the quakes, in feed order.
+	 * @throws IOException
+	 *             if the feed cannot be read or parsed.
+	 */
+	public static List<PointFeature> loadFeed(File feed) throws IOException {
+		final List<PointFeature> quakes = new ArrayList<PointFeature>();
+		InputStream input = new BufferedInputStream(new FileInputStream(feed));
+		try {
+			if (feed.getName().endsWith(".gz"))
+				input = new GZIPInputStream(input);
+			ParseFeed.streamEarthquake(input, new ParseFeed.FeatureHandler() {
+				public void handle(PointFeature feature) {
+					quakes.add(feature);
+				}
+			});
+		} catch (XMLStreamException e) {
+			throw new IOException("Feed " + feed + " could not be parsed: " + e.getMessage(), e);
+		} catch (RuntimeException e) {
+			// A malformed entry (missing elevation, title without magnitude)
+			throw new IOException("Feed " + feed + " could not be parsed: " + e, e);
+		} finally {
+			input.close();
+		}
+		return quakes;
+	}
+
+	/**
+	 * Finds the country of every quake, on all cores.
+	 *
+	 * @param quakes
+	 *            The quake features.
+	 * @return the country index of each quake, in the same order, or
+	 *         CountryIndex.NO_COUNTRY for the quakes in the ocean.
+	 */
+	public int[] classify(List<PointFeature> quakes) {
+		return QuakeClassifier.classify(quakes, countryRaster);
+	}
+
+	/**
+	 * Counts the quakes per country and in the ocean, and finds the largest
+	 * ones.
+	 *
+	 * @param quakes
+	 *            The quake features.
+	 * @param countries
+	 *            The country of each quake, from classify.
+	 * @param topCount
+	 *            The number of largest quakes kept.
+	 * @return the summary.
+	 */
+	public Summary summarize(List<PointFeature> quakes, int[] countries, int topCount) {
+		int[] counts = new int[countryNames.length];
+		int ocean = 0;
+
+		// The largest quakes so far, in a heap whose root is the smallest of
+		// them; of equal magnitudes the first quake is kept, as MagnitudeIndex
+		// orders them
+		int capacity = Math.max(0, Math.min(topCount, quakes.size()));
+		int[] heap = new int[capacity];
+		float[] heapMagnitudes = new float[capacity];
+		int kept = 0;
+		for (int i = 0; i < quakes.size(); i++) {
+			if (countries[i] == CountryIndex.NO_COUNTRY)
+				ocean++;
+			else
+				counts[countries[i]]++;
+
+			if (capacity == 0)
+				continue;
+			float magnitude = Float.parseFloat(quakes.get(i).getProperty("magnitude").toString());
+			if (kept < capacity) {
+				heap[kept] = i;
+				heapMagnitudes[kept] = magnitude;
+				siftUp(heap, heapMagnitudes, kept++);
+			} else if (magnitude > heapMagnitudes[0]) {
+				heap[0] = i;
+				heapMagnitudes[0] = magnitude;
+				siftDown(heap, heapMagnitudes, 0, kept);
+			}
+		}
+
+		// Taking the root out each time leaves the smallest at the end
+		PointFeature[] top = new PointFeature[kept];
+		for (int n = kept - 1; n >= 0; n--) {
+			top[n] = quakes.get(heap[0]);
+			heap[0] = heap[n];
+			heapMagnitudes[0] = heapMagnitudes[n];
+			siftDown(heap, heapMagnitudes, 0, n);
+		}
+		return new Summary(countryNames, counts, quakes.size(), ocean, Arrays.asList(top));
+	}
+
+	// Whether quake a of the heap comes after quake b in magnitude order:
+	// smaller, or as large and later in the feed
+	private static boolean after(int[] heap, float[] magnitudes, int a, int b) {
+		return magnitudes[a] < magnitudes[b] || magnitudes[a] == magnitudes[b] && heap[a] > heap[b];
+	}
+
+	private static void siftUp(int[] heap, float[] magnitudes, int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!after(heap, magnitudes, i, parent))
+				break;
+			swap(heap, magnitudes, i, parent);
+			i = parent;
+		}
+	}
+
+	private static void siftDown(int[] heap, float[] magnitudes, int i, int size) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && after(heap, magnitudes, child + 1, child))
+				child++;
+			if (!after(heap, magnitudes, child, i))
+				break;
+			swap(heap, magnitudes, i, child);
+			i = child;
+		}
+	}
+
+	private static void swap(int[] heap, float[] magnitudes, int a, int b) {
+		int index = heap[a];
+		heap[a] = heap[b];
+		heap[b] = index;
+		float magnitude = magnitudes[a];
+		magnitudes[a] = magnitudes[b];
+		magnitudes[b] = magnitude;
+	}
+
+	/**
+	 * @param country
+	 *            The country index.
+	 * @return the name of the country.
+	 */
+	public String getCountryName(int country) {
+		return countryNames[country];
+	}
+
+	/**
+	 * @return the names of the countries, by country index. Not to be
+	 *         modified.
+	 */
+	public String[] getCountryNames() {
+		return countryNames;
+	}
+
+	/**
+	 * @return the country markers, by country index.
+	 */
+	public List<Marker> getCountryMarkers() {
+		return countryMarkers;
+	}
+}
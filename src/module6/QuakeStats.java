@@ -0,0 +1,164 @@
+package module6;
+
+import java.util.Arrays;
+
+/**
+ * Aggregates of the visible quakes, kept up to date as quakes are shown,
+ * hidden or updated instead of being counted again from the markers: the
+ * number of quakes per country (by the dense country code of the quake
+ * store), per depth class and per magnitude bin, in primitive arrays.
+ * Reading the statistics of every country is a walk over the countries,
+ * whatever the number of quakes.
+ * <p>
+ * The values each quake was counted with are kept, so a quake whose values
+ * changed is taken out of the right counters.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class QuakeStats implements VisibilityEngine.Listener {
+
+	/** Magnitude bins are one unit wide; the last one takes the rest */
+	public static final int MAGNITUDE_BINS = 10;
+
+	// Not counted, in the per-quake arrays
+	private static final byte NOT_COUNTED = -1;
+
+	private int visible, land;
+	private int[] countryCounts;
+	private int[] depthCounts = new int[3];
+	private int[] magnitudeCounts = new int[MAGNITUDE_BINS];
+
+	// Values each quake was counted with, by quake index
+	private short[] countedCountry = new short[0];
+	private byte[] countedDepth = new byte[0], countedBin = new byte[0];
+
+	/**
+	 * Construct empty statistics.
+	 *
+	 * @param countries
+	 *            The number of country codes known in advance.
+	 */
+	public QuakeStats(int countries) {
+		countryCounts = new int[Math.max(countries, 1)];
+	}
+
+	public void quakeVisibilityChanged(EarthquakeMarker quake, boolean shown) {
+		int i = quake.getIndex();
+		boolean counted = i < countedDepth.length && countedDepth[i] != NOT_COUNTED;
+		if (shown && !counted)
+			add(quake);
+		else if (!shown && counted)
+			subtract(i);
+	}
+
+	/**
+	 * Takes the new values of a quake whose data was updated, if it is
+	 * counted.
+	 *
+	 * @param quake
+	 *            The marker updated.
+	 */
+	public void refresh(EarthquakeMarker quake) {
+		int i = quake.getIndex();
+		if (i < countedDepth.length && countedDepth[i] != NOT_COUNTED) {
+			subtract(i);
+			add(quake);
+		}
+	}
+
+	private void add(EarthquakeMarker quake) {
+		int i = quake.getIndex();
+		if (i >= countedDepth.length) {
+			int capacity = Math.max(i + 1, 2 * countedDepth.length);
+			int from = countedDepth.length;
+			countedCountry = Arrays.copyOf(countedCountry, capacity);
+			countedDepth = Arrays.copyOf(countedDepth, capacity);
+			countedBin = Arrays.copyOf(countedBin, capacity);
+			Arrays.fill(countedDepth, from, capacity, NOT_COUNTED);
+		}
+
+		short country = quake.getCountryCode();
+		int depth = quake.getDepthClass();
+		int bin = Math.max(0, Math.min(MAGNITUDE_BINS - 1, (int) quake.getMagnitude()));
+
+		visible++;
+		if (country != QuakeStore.OCEAN) {
+			land++;
+			if (country >= countryCounts.length)
+				countryCounts = Arrays.copyOf(countryCounts, Math.max(country + 1, 2 * countryCounts.length));
+			countryCounts[country]++;
+		}
+		depthCounts[depth]++;
+		magnitudeCounts[bin]++;
+
+		countedCountry[i] = country;
+		countedDepth[i] = (byte) depth;
+		countedBin[i] = (byte) bin;
+	}
+
+	private void subtract(int i) {
+		visible--;
+		if (countedCountry[i] != QuakeStore.OCEAN) {
+			land--;
+			countryCounts[countedCountry[i]]--;
+		}
+		depthCounts[countedDepth[i]]--;
+		magnitudeCounts[countedBin[i]]--;
+		countedDepth[i] = NOT_COUNTED;
+	}
+
+	/**
+	 * @return the number of visible quakes.
+	 */
+	public int getVisible() {
+		return visible;
+	}
+
+	/**
+	 * @return the number of visible quakes on land.
+	 */
+	public int getLand() {
+		return land;
+	}
+
+	/**
+	 * @return the number of visible quakes in the ocean.
+	 */
+	public int getOcean() {
+		return visible - land;
+	}
+
+	/**
+	 * @return the number of country codes with a counter.
+	 */
+	public int getCountryCodes() {
+		return countryCounts.length;
+	}
+
+	/**
+	 * @param country
+	 *            The country code (see QuakeStore).
+	 * @return the number of visible quakes in the country.
+	 */
+	public int getCountryCount(int country) {
+		return country < countryCounts.length ? countryCounts[country] : 0;
+	}
+
+	/**
+	 * @param depthClass
+	 *            The depth class (see EarthquakeMarker).
+	 * @return the number of visible quakes of the depth class.
+	 */
+	public int getDepthCount(int depthClass) {
+		return depthCounts[depthClass];
+	}
+
+	/**
+	 * @param bin
+	 *            The magnitude bin: quakes of magnitude bin to bin + 1.
+	 * @return the number of visible quakes in the bin.
+	 */
+	public int getMagnitudeCount(int bin) {
+		return magnitudeCounts[bin];
+	}
+}
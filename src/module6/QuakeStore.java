@@ -0,0 +1,413 @@
+package module6;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+/**
+ * Columnar storage for the earthquakes of a feed. Every earthquake gets an
+ * index, and its values are kept in parallel primitive arrays (latitude,
+ * longitude, magnitude, depth, threat radius, age and event time), so that
+ * sorting, filtering and drawing read plain values instead of parsing boxed
+ * feature properties. Repeated strings (age labels and country names) are
+ * dictionary-encoded with a <code>StringTable</code>.
+ * <p>
+ * Earthquake markers keep the index of their data in the store. Earthquakes
+ * with a feed id can be found by id, updated in place and removed; the index
+ * of a removed earthquake is given to the next earthquake added, so a store
+ * kept up to date with a feed does not grow past the largest feed.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class QuakeStore {
+
+	/** Age codes of the four "Age" categories of the USGS feeds */
+	public static final byte AGE_PAST_HOUR = 0;
+	public static final byte AGE_PAST_DAY = 1;
+	public static final byte AGE_PAST_WEEK = 2;
+	public static final byte AGE_PAST_MONTH = 3;
+	/**
+	 * Age code of an earthquake older than the past month; the feeds have no
+	 * such category, but quakes with another category count as older
+	 */
+	public static final byte AGE_OLDER = 4;
+	/** Age code of an earthquake without "Age" category, or with another one */
+	public static final byte AGE_UNKNOWN = -1;
+
+	/** Country code of an earthquake in the ocean */
+	public static final short OCEAN = -1;
+
+	/** Time of an earthquake whose feed gave none */
+	public static final long NO_TIME = Long.MIN_VALUE;
+
+	// Constants for distance
+	private static final float kmPerMile = 1.609344f;
+
+	private int size;
+
+	private float[] lat;
+	private float[] lon;
+	private float[] magnitude;
+	private float[] depth;
+	private float[] threatRadius;
+	private byte[] age;
+	private long[] time;
+	// Revision time of each earthquake in its feed, or NO_TIME
+	private long[] updated;
+	private short[] country;
+	private String[] title;
+	private String[] id;
+	// Feeds listing each earthquake, as a bit mask of feed numbers
+	private int[] feeds;
+
+	// Index of each feed id, and the removed indices
+	private Map<String, Integer> indexById = new HashMap<String, Integer>();
+	private BitSet removed = new BitSet();
+
+	// Removed indices not given again yet, used last in first out
+	private int[] freeIndices = new int[0];
+	private int freeCount;
+
+	// Changed by every add, update and removal
+	private int version;
+
+	private StringTable ageLabels;
+	private StringTable countryNames;
+
+	/**
+	 * Construct an empty QuakeStore object.
+	 */
+	public QuakeStore() {
+		this(64);
+	}
+
+	/**
+	 * Construct an empty QuakeStore object with room for a number of
+	 * earthquakes.
+	 *
+	 * @param capacity
+	 *            The number of earthquakes expected.
+	 */
+	public QuakeStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		lat = new float[capacity];
+		lon = new float[capacity];
+		magnitude = new float[capacity];
+		depth = new float[capacity];
+		threatRadius = new float[capacity];
+		age = new byte[capacity];
+		time = new long[capacity];
+		updated = new long[capacity];
+		country = new short[capacity];
+		title = new String[capacity];
+		id = new String[capacity];
+		feeds = new int[capacity];
+
+		// Age codes follow the order of the feed categories
+		ageLabels = new StringTable();
+		ageLabels.encode("Past Hour");
+		ageLabels.encode("Past Day");
+		ageLabels.encode("Past Week");
+		ageLabels.encode("Past Month");
+		ageLabels.encode("Older");
+
+		countryNames = new StringTable();
+	}
+
+	/**
+	 * Construct an empty QuakeStore object whose country codes are dense ids
+	 * of a list of countries, in list order: the code of a country is known
+	 * before any of its earthquakes is added, so statistics can be kept in
+	 * arrays indexed by country code.
+	 *
+	 * @param capacity
+	 *            The number of earthquakes expected.
+	 * @param countries
+	 *            The names of the countries (a repeated name keeps its first
+	 *            code).
+	 */
+	public QuakeStore(int capacity, String[] countries) {
+		this(capacity);
+		for (String name : countries)
+			countryNames.encode(name);
+	}
+
+	/**
+	 * Adds an earthquake read from the feed. The id and the properties
+	 * "magnitude", "depth", "title", "age", "time" (epoch milliseconds) and
+	 * "country" (if on land) of the feature are used.
+	 *
+	 * @param feature
+	 *            The earthquake feature.
+	 * @return the index of the earthquake in the store.
+	 */
+	public int add(PointFeature feature) {
+		int i;
+		if (freeCount > 0) {
+			i = freeIndices[--freeCount];
+			removed.clear(i);
+		} else {
+			if (size == lat.length)
+				grow();
+			i = size++;
+		}
+
+		set(i, feature);
+		feeds[i] = 0;
+		if (feature.getId() != null)
+			indexById.put(feature.getId(), i);
+		return i;
+	}
+
+	/**
+	 * Replaces the values of an earthquake by the ones of a newer feature of
+	 * the same event.
+	 *
+	 * @param i
+	 *            The index of the earthquake.
+	 * @param feature
+	 *            The earthquake feature.
+	 */
+	public void update(int i, PointFeature feature) {
+		set(i, feature);
+	}
+
+	/**
+	 * Removes an earthquake. Its values stay readable for the markers still
+	 * holding its index until the index is given to a new earthquake.
+	 *
+	 * @param i
+	 *            The index of the earthquake.
+	 */
+	public void remove(int i) {
+		if (removed.get(i))
+			return;
+		// The id may already be given to a newer earthquake of the event
+		if (id[i] != null && Integer.valueOf(i).equals(indexById.get(id[i])))
+			indexById.remove(id[i]);
+		removed.set(i);
+
+		if (freeCount == freeIndices.length)
+			freeIndices = Arrays.copyOf(freeIndices, Math.max(16, 2 * freeCount));
+		freeIndices[freeCount++] = i;
+		version++;
+	}
+
+	private void set(int i, PointFeature feature) {
+		version++;
+		id[i] = feature.getId();
+		lat[i] = feature.getLocation().getLat();
+		lon[i] = feature.getLocation().getLon();
+		magnitude[i] = Float.parseFloat(feature.getProperty("magnitude").toString());
+		depth[i] = Float.parseFloat(feature.getProperty("depth").toString());
+		threatRadius[i] = (float) threatCircle(magnitude[i]);
+		title[i] = (String) feature.getProperty("title");
+
+		String ageStr = (String) feature.getProperty("age");
+		// Other labels are not added to the table, which codes fit in a byte
+		age[i] = ageStr == null ? AGE_UNKNOWN : (byte) ageLabels.codeOf(ageStr);
+
+		Object timeValue = feature.getProperty("time");
+		time[i] = timeValue instanceof Number ? ((Number) timeValue).longValue() : NO_TIME;
+
+		Object updatedValue = feature.getProperty("updated");
+		updated[i] = updatedValue instanceof Number ? ((Number) updatedValue).longValue() : NO_TIME;
+
+		Object countryName = feature.getProperty("country");
+		country[i] = countryName == null ? OCEAN : (short) countryNames.encode(countryName.toString());
+	}
+
+	// Makes room for more earthquakes
+	private void grow() {
+		int capacity = lat.length + (lat.length >> 1) + 1;
+		lat = Arrays.copyOf(lat, capacity);
+		lon = Arrays.copyOf(lon, capacity);
+		magnitude = Arrays.copyOf(magnitude, capacity);
+		depth = Arrays.copyOf(depth, capacity);
+		threatRadius = Arrays.copyOf(threatRadius, capacity);
+		age = Arrays.copyOf(age, capacity);
+		time = Arrays.copyOf(time, capacity);
+		updated = Arrays.copyOf(updated, capacity);
+		country = Arrays.copyOf(country, capacity);
+		title = Arrays.copyOf(title, capacity);
+		id = Arrays.copyOf(id, capacity);
+		feeds = Arrays.copyOf(feeds, capacity);
+	}
+
+	/**
+	 * Records feeds which list an earthquake, when several feeds are merged.
+	 *
+	 * @param i
+	 *            The index of the earthquake.
+	 * @param feedMask
+	 *            The feeds, as a bit mask of feed numbers (0 to 31).
+	 */
+	public void addFeeds(int i, int feedMask) {
+		feeds[i] |= feedMask;
+	}
+
+	/**
+	 * Records that a feed no longer lists an earthquake.
+	 *
+	 * @param i
+	 *            The index of the earthquake.
+	 * @param feed
+	 *            The feed number (0 to 31).
+	 * @return true if another feed still lists the earthquake.
+	 */
+	public boolean removeFeed(int i, int feed) {
+		feeds[i] &= ~(1 << feed);
+		return feeds[i] != 0;
+	}
+
+	/**
+	 * @return the feeds listing the earthquake, as a bit mask of feed
+	 *         numbers.
+	 */
+	public int getFeeds(int i) {
+		return feeds[i];
+	}
+
+	/**
+	 * Return the "threat circle" radius, or distance up to which an
+	 * earthquake of a given magnitude can affect things. DISCLAIMER: this
+	 * formula is for illustration purposes only and is not intended to be
+	 * used for safety-critical or predictive applications.
+	 *
+	 * @param magnitude
+	 *            The magnitude of the earthquake.
+	 * @return the radius in km.
+	 */
+	public static double threatCircle(float magnitude) {
+		double miles = 20.0f * Math.pow(1.8, 2 * magnitude - 5);
+		double km = (miles * kmPerMile);
+		return km;
+	}
+
+	/**
+	 * @return the number of earthquake indices given, removed ones included:
+	 *         every index is below it.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return a number which changes whenever an earthquake is added,
+	 *         updated or removed, so values read by index can be cached.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @param featureId
+	 *            The feed id of an earthquake.
+	 * @return the index of the earthquake, or -1 if it is not in the store.
+	 */
+	public int indexOf(String featureId) {
+		Integer i = indexById.get(featureId);
+		return i == null ? -1 : i;
+	}
+
+	public boolean isRemoved(int i) {
+		return removed.get(i);
+	}
+
+	/**
+	 * @return the feed id, or null if the feed gave none.
+	 */
+	public String getId(int i) {
+		return id[i];
+	}
+
+	public float getLat(int i) {
+		return lat[i];
+	}
+
+	public float getLon(int i) {
+		return lon[i];
+	}
+
+	public float getMagnitude(int i) {
+		return magnitude[i];
+	}
+
+	public float getDepth(int i) {
+		return depth[i];
+	}
+
+	/**
+	 * @return the threat circle radius in km, see threatCircle.
+	 */
+	public float getThreatRadius(int i) {
+		return threatRadius[i];
+	}
+
+	public String getTitle(int i) {
+		return title[i];
+	}
+
+	/**
+	 * @return the age code, one of the AGE_ constants.
+	 */
+	public byte getAgeCode(int i) {
+		return age[i];
+	}
+
+	/**
+	 * @return the event time in epoch milliseconds, or NO_TIME.
+	 */
+	public long getTime(int i) {
+		return time[i];
+	}
+
+	/**
+	 * Tells whether a feature of an earthquake is an older revision than the
+	 * one stored, with the rule EventIndex merges feeds by: a revision
+	 * without "updated" time never replaces one with it.
+	 *
+	 * @param i
+	 *            The index of the earthquake.
+	 * @param feature
+	 *            A feature of the same event.
+	 * @return true if the feature must not replace the stored values.
+	 */
+	public boolean isOlderRevision(int i, PointFeature feature) {
+		if (updated[i] == NO_TIME)
+			return false;
+		Object value = feature.getProperty("updated");
+		return !(value instanceof Number) || ((Number) value).longValue() < updated[i];
+	}
+
+	/**
+	 * @return the country code, or OCEAN.
+	 */
+	public short getCountryCode(int i) {
+		return country[i];
+	}
+
+	/**
+	 * @return the country name, or null for an earthquake in the ocean.
+	 */
+	public String getCountry(int i) {
+		return country[i] == OCEAN ? null : countryNames.decode(country[i]);
+	}
+
+	/**
+	 * @return the dictionary of the age labels known, by age code.
+	 */
+	public StringTable getAgeLabels() {
+		return ageLabels;
+	}
+
+	/**
+	 * @return the dictionary of country names.
+	 */
+	public StringTable getCountryNames() {
+		return countryNames;
+	}
+}
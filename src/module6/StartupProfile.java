@@ -0,0 +1,57 @@
+package module6;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wall-clock times of the stages of the startup. Stages may run at the same
+ * time in different threads; each one records when it began and ended, so
+ * the breakdown shows how they overlap and what the total wall-clock time
+ * is compared to running them one after another.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class StartupProfile {
+
+	private final long start = System.nanoTime();
+
+	private List<String> stages = new ArrayList<String>();
+	private List<String> threads = new ArrayList<String>();
+	private List<long[]> times = new ArrayList<long[]>();
+
+	/**
+	 * @return the time a stage begins, to be given to end.
+	 */
+	public long begin() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records a stage which just ended.
+	 *
+	 * @param stage
+	 *            The name of the stage.
+	 * @param begin
+	 *            The time returned by begin when the stage began.
+	 */
+	public synchronized void end(String stage, long begin) {
+		stages.add(stage);
+		threads.add(Thread.currentThread().getName());
+		times.add(new long[] { begin - start, System.nanoTime() - start });
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder("Startup stages (ms):\n");
+		long sum = 0, last = 0;
+		for (int i = 0; i < stages.size(); i++) {
+			long[] t = times.get(i);
+			sb.append(String.format("  %-22s %7.1f to %7.1f  %7.1f  [%s]%n", stages.get(i), t[0] / 1e6, t[1] / 1e6,
+					(t[1] - t[0]) / 1e6, threads.get(i)));
+			sum += t[1] - t[0];
+			last = Math.max(last, t[1]);
+		}
+		sb.append(String.format("  Wall clock %.1f ms, stages one after another %.1f ms", last / 1e6, sum / 1e6));
+		return sb.toString();
+	}
+}
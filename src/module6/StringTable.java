@@ -0,0 +1,71 @@
+package module6;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoding for repeated strings, such as age labels or country
+ * names. Every distinct string gets a dense integer code, starting at 0, in
+ * the order it is first encoded, so columns can hold the codes instead of
+ * the strings themselves.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class StringTable {
+
+	private List<String> values;
+	private Map<String, Integer> codes;
+
+	/**
+	 * Construct an empty StringTable object.
+	 */
+	public StringTable() {
+		values = new ArrayList<String>();
+		codes = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Gets the code of a string, adding it to the table if it is new.
+	 *
+	 * @param value
+	 *            The string to be encoded (not null).
+	 * @return the code of the string.
+	 */
+	public int encode(String value) {
+		Integer code = codes.get(value);
+		if (code == null) {
+			code = values.size();
+			values.add(value);
+			codes.put(value, code);
+		}
+		return code;
+	}
+
+	/**
+	 * @param value
+	 *            The string to look for.
+	 * @return the code of the string, or -1 if it is not in the table.
+	 */
+	public int codeOf(String value) {
+		Integer code = codes.get(value);
+		return code == null ? -1 : code;
+	}
+
+	/**
+	 * @param code
+	 *            A code returned by encode.
+	 * @return the string with that code.
+	 */
+	public String decode(int code) {
+		return values.get(code);
+	}
+
+	/**
+	 * @return the number of distinct strings in the table.
+	 */
+	public int size() {
+		return values.size();
+	}
+}
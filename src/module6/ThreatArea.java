@@ -0,0 +1,311 @@
+package module6;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.utils.ScreenPosition;
+import processing.core.PConstants;
+import processing.core.PGraphics;
+
+/**
+ * The threat area of an earthquake: every location within the threat circle
+ * radius, measured along the Earth surface. Its border is the geodesic
+ * circle, computed as the destination points at that distance over a number
+ * of bearings. On the map it is generally not a circle: it stretches towards
+ * the poles, may enclose a pole, and may cross the antimeridian, where it is
+ * split in several polygons.
+ * <p>
+ * The geographic polygons are computed once. Their screen coordinates are
+ * cached and only computed again when the map transform changes.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class ThreatArea {
+
+	/** Number of bearings used for the geodesic circle */
+	public static final int SEGMENTS = 120;
+
+	// Same Earth radius as the distances of the map library
+	private static final double EARTH_RADIUS_KM = 6371.01;
+	// Latitude limit of the Mercator projection
+	private static final float MAX_LAT = 85.0511f;
+
+	// Border of the area, longitudes within [-180, 180]
+	private float[] ringLat, ringLon;
+	// Polygons filling the area (or the part of the map outside it, when
+	// inverted), split at the antimeridian. Interleaved lat/lon pairs
+	private List<float[]> pieces;
+	private boolean inverted;
+
+	// Screen coordinates and the map transform they were computed for
+	private MapView view;
+	private float[] ringXY;
+	private List<float[]> piecesXY;
+	private float[] mapXY;
+
+	/**
+	 * Computes the threat area of a location.
+	 *
+	 * @param center
+	 *            The earthquake location.
+	 * @param radiusKm
+	 *            The threat circle radius in km.
+	 */
+	public ThreatArea(Location center, double radiusKm) {
+		double lat = Math.toRadians(center.getLat());
+		double lon = Math.toRadians(center.getLon());
+		double delta = radiusKm / EARTH_RADIUS_KM;
+
+		pieces = new ArrayList<float[]>();
+
+		if (delta >= Math.PI) {
+			// The whole Earth
+			inverted = true;
+			ringLat = ringLon = new float[0];
+		} else if (delta > Math.PI / 2 + Math.abs(lat)) {
+			// Both poles are inside: draw the map minus the circle around the
+			// antipode which is not reached
+			inverted = true;
+			computeCircle(-lat, lon + Math.PI, Math.PI - delta);
+		} else {
+			computeCircle(lat, lon, delta);
+		}
+	}
+
+	// Computes the ring and the polygons of a geodesic circle enclosing at
+	// most one pole
+	private void computeCircle(double lat, double lon, double delta) {
+		ringLat = new float[SEGMENTS];
+		ringLon = new float[SEGMENTS];
+
+		// Unwrapped longitudes, so the polygon has no jumps of 360 degrees
+		float[] unwrapped = new float[SEGMENTS];
+
+		for (int i = 0; i < SEGMENTS; i++) {
+			double bearing = 2 * Math.PI * i / SEGMENTS;
+			double lat2 = Math.asin(Math.sin(lat) * Math.cos(delta)
+					+ Math.cos(lat) * Math.sin(delta) * Math.cos(bearing));
+			double lon2 = lon + Math.atan2(Math.sin(bearing) * Math.sin(delta) * Math.cos(lat),
+					Math.cos(delta) - Math.sin(lat) * Math.sin(lat2));
+
+			ringLat[i] = (float) Math.toDegrees(lat2);
+			ringLon[i] = (float) normalizeLon(Math.toDegrees(lon2));
+			unwrapped[i] = i == 0 ? ringLon[0]
+					: unwrapped[i - 1] + (float) normalizeLon(ringLon[i] - ringLon[i - 1]);
+		}
+
+		float[] polygon;
+		float turn = unwrapped[SEGMENTS - 1]
+				+ (float) normalizeLon(ringLon[0] - ringLon[SEGMENTS - 1]) - unwrapped[0];
+
+		if (Math.abs(turn) > 180) {
+			// A pole is inside: the border goes once around the globe, so
+			// close the polygon along the pole latitude
+			float poleLat = lat > 0 ? 90 : -90;
+			polygon = new float[2 * (SEGMENTS + 3)];
+			for (int i = 0; i < SEGMENTS; i++) {
+				polygon[2 * i] = ringLat[i];
+				polygon[2 * i + 1] = unwrapped[i];
+			}
+			polygon[2 * SEGMENTS] = ringLat[0];
+			polygon[2 * SEGMENTS + 1] = unwrapped[0] + turn;
+			polygon[2 * SEGMENTS + 2] = poleLat;
+			polygon[2 * SEGMENTS + 3] = unwrapped[0] + turn;
+			polygon[2 * SEGMENTS + 4] = poleLat;
+			polygon[2 * SEGMENTS + 5] = unwrapped[0];
+		} else {
+			polygon = new float[2 * SEGMENTS];
+			for (int i = 0; i < SEGMENTS; i++) {
+				polygon[2 * i] = ringLat[i];
+				polygon[2 * i + 1] = unwrapped[i];
+			}
+		}
+
+		// Split at the antimeridian: clip the polygon and its copies shifted
+		// by one turn to the [-180, 180] longitude band
+		for (int shift = -360; shift <= 360; shift += 360) {
+			float[] piece = clipLon(polygon, shift);
+			if (piece.length >= 6 && lonSpan(piece) > 1e-3f)
+				pieces.add(piece);
+		}
+	}
+
+	private static double normalizeLon(double lon) {
+		while (lon > 180)
+			lon -= 360;
+		while (lon <= -180)
+			lon += 360;
+		return lon;
+	}
+
+	// Longitude width of a polygon (copies which only touch the band at
+	// the antimeridian have no width)
+	private static float lonSpan(float[] polygon) {
+		float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+		for (int i = 1; i < polygon.length; i += 2) {
+			min = Math.min(min, polygon[i]);
+			max = Math.max(max, polygon[i]);
+		}
+		return max - min;
+	}
+
+	// Sutherland-Hodgman clipping of a polygon, shifted in longitude, to
+	// the [-180, 180] band
+	private static float[] clipLon(float[] polygon, float shift) {
+		float[] shifted = new float[polygon.length];
+		for (int i = 0; i < polygon.length; i += 2) {
+			shifted[i] = polygon[i];
+			shifted[i + 1] = polygon[i + 1] + shift;
+		}
+		return clipEdge(clipEdge(shifted, -180, 1), 180, -1);
+	}
+
+	// Keeps the part of the polygon where side * (lon - bound) >= 0
+	private static float[] clipEdge(float[] polygon, float bound, int side) {
+		int n = polygon.length / 2;
+		float[] out = new float[4 * n];
+		int k = 0;
+
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			float latA = polygon[2 * i], lonA = polygon[2 * i + 1];
+			float latB = polygon[2 * j], lonB = polygon[2 * j + 1];
+			boolean inA = side * (lonA - bound) >= 0, inB = side * (lonB - bound) >= 0;
+
+			if (inA) {
+				out[k++] = latA;
+				out[k++] = lonA;
+			}
+			if (inA != inB) {
+				float t = (bound - lonA) / (lonB - lonA);
+				out[k++] = latA + t * (latB - latA);
+				out[k++] = bound;
+			}
+		}
+
+		float[] clipped = new float[k];
+		System.arraycopy(out, 0, clipped, 0, k);
+		return clipped;
+	}
+
+	/**
+	 * @return true if the polygons are the parts of the map outside the
+	 *         threat area, instead of the threat area itself.
+	 */
+	public boolean isInverted() {
+		return inverted;
+	}
+
+	/**
+	 * @return the polygons, as interleaved lat/lon pairs.
+	 */
+	public List<float[]> getPieces() {
+		return pieces;
+	}
+
+	/**
+	 * Draws the threat area with the current fill and stroke of the graphics
+	 * buffer. The stroke is only used for the border of the area, not for the
+	 * cuts at the antimeridian.
+	 *
+	 * @param pg
+	 *            The PGraphics object to be used as a graphics buffer.
+	 * @param map
+	 *            The map the area is drawn on.
+	 */
+	public void draw(PGraphics pg, UnfoldingMap map) {
+		project(map, MapView.of(map));
+		draw(pg);
+	}
+
+	/**
+	 * Draws the threat area with the screen coordinates of the last call to
+	 * project.
+	 *
+	 * @param pg
+	 *            The PGraphics object to be used as a graphics buffer.
+	 */
+	public void draw(PGraphics pg) {
+		pg.pushStyle();
+
+		// Fill
+		pg.noStroke();
+		if (inverted) {
+			pg.beginShape();
+			for (int i = 0; i < mapXY.length; i += 2)
+				pg.vertex(mapXY[i], mapXY[i + 1]);
+			for (float[] piece : piecesXY) {
+				pg.beginContour();
+				for (int i = piece.length - 2; i >= 0; i -= 2)
+					pg.vertex(piece[i], piece[i + 1]);
+				pg.endContour();
+			}
+			pg.endShape(PConstants.CLOSE);
+		} else {
+			for (float[] piece : piecesXY) {
+				pg.beginShape();
+				for (int i = 0; i < piece.length; i += 2)
+					pg.vertex(piece[i], piece[i + 1]);
+				pg.endShape(PConstants.CLOSE);
+			}
+		}
+		pg.popStyle();
+
+		// Border, broken where it crosses the antimeridian
+		int n = ringLat.length;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			if (Math.abs(ringLon[j] - ringLon[i]) < 180)
+				pg.line(ringXY[2 * i], ringXY[2 * i + 1], ringXY[2 * j], ringXY[2 * j + 1]);
+		}
+	}
+
+	/**
+	 * Computes the screen coordinates of the area, unless they were already
+	 * computed for the same map transform.
+	 *
+	 * @param map
+	 *            The map the area is drawn on.
+	 * @param current
+	 *            The current transform of the map.
+	 * @return true if the coordinates were computed again.
+	 */
+	public boolean project(UnfoldingMap map, MapView current) {
+		if (current.equals(view))
+			return false;
+		view = current;
+
+		ringXY = project(map, ringLat, ringLon);
+
+		piecesXY = new ArrayList<float[]>(pieces.size());
+		for (float[] piece : pieces) {
+			float[] xy = new float[piece.length];
+			for (int i = 0; i < piece.length; i += 2)
+				setScreenPosition(map, piece[i], piece[i + 1], xy, i);
+			piecesXY.add(xy);
+		}
+
+		mapXY = new float[8];
+		setScreenPosition(map, MAX_LAT, -180, mapXY, 0);
+		setScreenPosition(map, MAX_LAT, 180, mapXY, 2);
+		setScreenPosition(map, -MAX_LAT, 180, mapXY, 4);
+		setScreenPosition(map, -MAX_LAT, -180, mapXY, 6);
+		return true;
+	}
+
+	private static float[] project(UnfoldingMap map, float[] lat, float[] lon) {
+		float[] xy = new float[2 * lat.length];
+		for (int i = 0; i < lat.length; i++)
+			setScreenPosition(map, lat[i], lon[i], xy, 2 * i);
+		return xy;
+	}
+
+	// Latitudes are limited to the ones the Mercator projection can show
+	private static void setScreenPosition(UnfoldingMap map, float lat, float lon, float[] xy, int i) {
+		ScreenPosition pos = map.getScreenPosition(new Location(Math.max(-MAX_LAT, Math.min(MAX_LAT, lat)), lon));
+		xy[i] = pos.x;
+		xy[i + 1] = pos.y;
+	}
+}
@@ -0,0 +1,127 @@
+package module6;
+
+import java.util.List;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.ScreenPosition;
+import processing.core.PGraphics;
+
+/**
+ * Cache of the screen geometry drawn for the selected earthquake: its threat
+ * area and the ocean threat lines to the cities within its threat circle.
+ * The cache is keyed by the earthquake and the map transform, and is only
+ * computed again when one of them changes. The cities within the threat
+ * circle only depend on the earthquake, so they are kept while the map is
+ * zoomed or panned.
+ * <p>
+ * Hits and misses are counted, so it can be checked that frames where
+ * nothing moved do no geodesic work at all.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class ThreatCache {
+
+	// Key
+	private EarthquakeMarker quake;
+	private MapView view;
+
+	// Cities within the threat circle of the quake
+	private List<Marker> threatenedCities;
+
+	// Screen coordinates of the quake and of the threatened cities
+	private float quakeX, quakeY;
+	private float[] citiesXY;
+
+	private long hits, misses;
+
+	/**
+	 * Brings the cached geometry up to date for an earthquake and the current
+	 * map transform.
+	 *
+	 * @param selected
+	 *            The selected earthquake.
+	 * @param map
+	 *            The map the geometry is drawn on.
+	 * @param cities
+	 *            The spatial index of the city markers.
+	 * @return true if the cached geometry could be used as it was.
+	 */
+	public boolean update(EarthquakeMarker selected, UnfoldingMap map, LocationIndex cities) {
+		MapView current = MapView.of(map);
+		if (selected == quake && current.equals(view)) {
+			hits++;
+			return true;
+		}
+		misses++;
+
+		if (selected != quake) {
+			quake = selected;
+			threatenedCities = cities.query(quake.getLocation(), quake.threatCircle());
+		}
+		view = current;
+
+		ScreenPosition quakePos = map.getScreenPosition(quake.getLocation());
+		quakeX = quakePos.x;
+		quakeY = quakePos.y;
+
+		citiesXY = new float[2 * threatenedCities.size()];
+		for (int i = 0; i < threatenedCities.size(); i++) {
+			ScreenPosition cityPos = map.getScreenPosition(threatenedCities.get(i).getLocation());
+			citiesXY[2 * i] = cityPos.x;
+			citiesXY[2 * i + 1] = cityPos.y;
+		}
+
+		quake.getThreatArea().project(map, view);
+		return false;
+	}
+
+	/**
+	 * Forgets the cached geometry, e.g. after the cities changed.
+	 */
+	public void invalidate() {
+		quake = null;
+		view = null;
+	}
+
+	/**
+	 * Draws lines from the quake to every city within its threat circle, with
+	 * the current stroke.
+	 *
+	 * @param pg
+	 *            The PGraphics object to be used as a graphics buffer.
+	 */
+	public void drawThreatLines(PGraphics pg) {
+		for (int i = 0; i < citiesXY.length; i += 2)
+			pg.line(quakeX, quakeY, citiesXY[i], citiesXY[i + 1]);
+	}
+
+	/**
+	 * Draws the threat area of the quake, with the current fill and stroke.
+	 *
+	 * @param pg
+	 *            The PGraphics object to be used as a graphics buffer.
+	 */
+	public void drawThreatArea(PGraphics pg) {
+		quake.getThreatArea().draw(pg);
+	}
+
+	/**
+	 * @return the number of updates which used the cached geometry.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of updates which computed the geometry again.
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	@Override
+	public String toString() {
+		return "Threat cache: " + hits + " hits, " + misses + " misses";
+	}
+}
@@ -0,0 +1,233 @@
+package module6;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Quake indices ordered by event time, oldest first; quakes of the same time
+ * are ordered by index. The order is kept in parallel sorted arrays of times
+ * and indices, so the quakes of any time window are found by binary search
+ * in O(log n + k) for k quakes in the window.
+ * <p>
+ * Quakes added are kept apart until the order is next read; they are then
+ * sorted and merged into the arrays at once, so loading n quakes costs
+ * O(n log n) whatever their order, and a single quake added by a feed
+ * update costs one merge.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class TimeIndex {
+
+	// Sorted by time, then index
+	private long[] times = new long[16];
+	private int[] indices = new int[16];
+	private int size;
+
+	// Quakes added since the last merge, in any order
+	private long[] addedTimes = new long[16];
+	private int[] addedIndices = new int[16];
+	private int added;
+
+	// Time of each quake index in the index, which ones are in it and which
+	// ones are not merged yet
+	private long[] timeOf = new long[16];
+	private BitSet present = new BitSet(), pending = new BitSet();
+
+	/**
+	 * Adds a quake, or moves it if its time changed.
+	 *
+	 * @param index
+	 *            The quake index in the store.
+	 * @param time
+	 *            The event time, in epoch milliseconds.
+	 */
+	public void add(int index, long time) {
+		if (present.get(index))
+			remove(index);
+
+		if (added == addedTimes.length) {
+			addedTimes = Arrays.copyOf(addedTimes, added + (added >> 1));
+			addedIndices = Arrays.copyOf(addedIndices, addedTimes.length);
+		}
+		addedTimes[added] = time;
+		addedIndices[added] = index;
+		added++;
+
+		if (index >= timeOf.length)
+			timeOf = Arrays.copyOf(timeOf, Math.max(index + 1, timeOf.length + (timeOf.length >> 1)));
+		timeOf[index] = time;
+		present.set(index);
+		pending.set(index);
+	}
+
+	/**
+	 * Removes a quake, if it is in the index.
+	 *
+	 * @param index
+	 *            The quake index in the store.
+	 */
+	public void remove(int index) {
+		if (!present.get(index))
+			return;
+
+		if (pending.get(index)) {
+			// Not merged yet: the last quake added takes its place
+			int pos = 0;
+			while (addedIndices[pos] != index)
+				pos++;
+			added--;
+			addedTimes[pos] = addedTimes[added];
+			addedIndices[pos] = addedIndices[added];
+			pending.clear(index);
+		} else {
+			int pos = find(timeOf[index], index);
+			System.arraycopy(times, pos + 1, times, pos, size - pos - 1);
+			System.arraycopy(indices, pos + 1, indices, pos, size - pos - 1);
+			size--;
+		}
+		present.clear(index);
+	}
+
+	// Sorts the quakes added and merges them into the sorted arrays
+	private void merge() {
+		if (added == 0)
+			return;
+
+		sort(addedTimes, addedIndices, added);
+
+		// Merged from the end, so the sorted arrays are filled in place
+		if (size + added > times.length) {
+			int capacity = Math.max(size + added, times.length + (times.length >> 1));
+			times = Arrays.copyOf(times, capacity);
+			indices = Arrays.copyOf(indices, capacity);
+		}
+		int i = size - 1, j = added - 1;
+		for (int pos = size + added - 1; j >= 0; pos--) {
+			if (i >= 0 && compare(times[i], indices[i], addedTimes[j], addedIndices[j]) > 0) {
+				times[pos] = times[i];
+				indices[pos] = indices[i];
+				i--;
+			} else {
+				times[pos] = addedTimes[j];
+				indices[pos] = addedIndices[j];
+				j--;
+			}
+		}
+		size += added;
+		added = 0;
+		pending.clear();
+	}
+
+	// Bottom-up merge sort of (time, index) pairs held in parallel arrays
+	private static void sort(long[] times, int[] indices, int n) {
+		long[] t = times, tt = new long[n];
+		int[] x = indices, xx = new int[n];
+		for (int width = 1; width < n; width *= 2) {
+			for (int lo = 0; lo < n; lo += 2 * width) {
+				int mid = Math.min(lo + width, n), hi = Math.min(lo + 2 * width, n);
+				int i = lo, j = mid;
+				for (int k = lo; k < hi; k++) {
+					if (i < mid && (j >= hi || compare(t[i], x[i], t[j], x[j]) <= 0)) {
+						tt[k] = t[i];
+						xx[k] = x[i++];
+					} else {
+						tt[k] = t[j];
+						xx[k] = x[j++];
+					}
+				}
+			}
+			long[] swapTimes = t;
+			t = tt;
+			tt = swapTimes;
+			int[] swapIndices = x;
+			x = xx;
+			xx = swapIndices;
+		}
+		if (t != times) {
+			System.arraycopy(t, 0, times, 0, n);
+			System.arraycopy(x, 0, indices, 0, n);
+		}
+	}
+
+	private static int compare(long time1, int index1, long time2, int index2) {
+		return time1 != time2 ? Long.compare(time1, time2) : Integer.compare(index1, index2);
+	}
+
+	// Position of a merged (time, index) pair, or -(insertion point) - 1 as
+	// Arrays.binarySearch
+	private int find(long time, int index) {
+		int low = 0, high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(times[mid], indices[mid], time, index);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * @param time
+	 *            A time, in epoch milliseconds.
+	 * @return the position in time order of the first quake at or after that
+	 *         time (size if there is none).
+	 */
+	public int rank(long time) {
+		merge();
+		int low = 0, high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] < time)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the quakes of a time window.
+	 *
+	 * @param from
+	 *            The start of the window, included, in epoch milliseconds.
+	 * @param to
+	 *            The end of the window, excluded.
+	 * @param result
+	 *            Bits are set for the indices of the quakes in the window.
+	 */
+	public void range(long from, long to, BitSet result) {
+		for (int pos = rank(from); pos < size && times[pos] < to; pos++)
+			result.set(indices[pos]);
+	}
+
+	/**
+	 * @param rank
+	 *            The position in time order, from 0.
+	 * @return the quake index at that position.
+	 */
+	public int get(int rank) {
+		merge();
+		return indices[rank];
+	}
+
+	/**
+	 * @param rank
+	 *            The position in time order, from 0.
+	 * @return the time of the quake at that position.
+	 */
+	public long getTime(int rank) {
+		merge();
+		return times[rank];
+	}
+
+	/**
+	 * @return the number of quakes in the index.
+	 */
+	public int size() {
+		return size + added;
+	}
+}
@@ -0,0 +1,239 @@
+package module6;
+
+import java.util.Arrays;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.utils.ScreenPosition;
+import processing.core.PGraphics;
+
+/**
+ * Replays the quakes of the time index as an animation: a time cursor moves
+ * through the event times at a given speed, each quake appears when the
+ * cursor reaches it and fades out over a trail of event time.
+ * <p>
+ * The quakes shown are a range of positions in the time index, found by
+ * binary search every frame, so quakes are added and retired without
+ * touching the quake markers or their visibility, whatever the size of the
+ * archive. Screen positions are projected once per quake and kept until the
+ * map is zoomed or panned.
+ * <p>
+ * Playback follows the wall clock: a slow frame moves the cursor further,
+ * merging the steps it missed, up to a limit after which steps are skipped.
+ * Drawing stops once the frame budget is spent; the quakes are drawn newest
+ * first, so the ones left out are the most faded.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class TimeLapse {
+
+	/** Playback speed at start, in event milliseconds per second */
+	public static final long DEFAULT_SPEED = VisibilityEngine.DAY;
+
+	// Slowest and fastest playback speeds
+	private static final long MIN_SPEED = VisibilityEngine.HOUR;
+	private static final long MAX_SPEED = 365 * VisibilityEngine.DAY;
+	// Seconds of playback a quake takes to fade out
+	private static final float FADE_SECONDS = 2;
+	// Longest step of the cursor, in seconds of playback
+	private static final float MAX_STEP_SECONDS = 0.25f;
+	// Drawing time of a frame, in nanoseconds, and number of quakes drawn
+	// between clock reads
+	private static final long FRAME_BUDGET = 8000000;
+	private static final int BUDGET_CHECK = 256;
+
+	// Quakes this far outside the map area may still show a part
+	private static final float MARGIN = 30;
+
+	private final TimeIndex timeIndex;
+	private final QuakeStore store;
+	private final float left, top, right, bottom;
+
+	private boolean playing;
+	private long cursor, speed = DEFAULT_SPEED;
+	private long lastFrame;
+
+	// Positions in the time index of the quakes shown: [tail, head)
+	private int tail, head;
+
+	// Screen positions by quake index, and the view and store version they
+	// were projected in: an index given to a new quake is projected again
+	private float[] xs = new float[0], ys = new float[0];
+	private int[] projectedIn = new int[0];
+	private MapView view;
+	private int storeVersion;
+	private int viewStamp;
+
+	// Quakes drawn and left out by the last frame
+	private int drawn, skipped;
+
+	/**
+	 * Construct a stopped playback.
+	 *
+	 * @param timeIndex
+	 *            The time order of the quakes.
+	 * @param store
+	 *            The data of the quakes.
+	 * @param left
+	 *            x-coordinate of the map.
+	 * @param top
+	 *            y-coordinate of the map.
+	 * @param width
+	 *            width of the map.
+	 * @param height
+	 *            height of the map.
+	 */
+	public TimeLapse(TimeIndex timeIndex, QuakeStore store, float left, float top, int width, int height) {
+		this.timeIndex = timeIndex;
+		this.store = store;
+		this.left = left - MARGIN;
+		this.top = top - MARGIN;
+		right = left + width + MARGIN;
+		bottom = top + height + MARGIN;
+	}
+
+	/**
+	 * Starts playing from the oldest quake.
+	 */
+	public void start() {
+		if (timeIndex.size() == 0)
+			return;
+		cursor = timeIndex.getTime(0);
+		tail = head = 0;
+		lastFrame = System.nanoTime();
+		playing = true;
+	}
+
+	public void stop() {
+		playing = false;
+	}
+
+	public boolean isPlaying() {
+		return playing;
+	}
+
+	/**
+	 * Doubles (or halves) the playback speed, within limits.
+	 *
+	 * @param faster
+	 *            true to double the speed, false to halve it.
+	 */
+	public void changeSpeed(boolean faster) {
+		speed = faster ? Math.min(2 * speed, MAX_SPEED) : Math.max(speed / 2, MIN_SPEED);
+	}
+
+	/**
+	 * @return the playback speed, in event milliseconds per second.
+	 */
+	public long getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * @return the event time reached by the cursor, in epoch milliseconds.
+	 */
+	public long getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * Moves the cursor by the wall time elapsed since the last frame, and
+	 * finds the quakes shown. Playback stops once the last quake has faded.
+	 *
+	 * @return true if still playing.
+	 */
+	public boolean advance() {
+		if (!playing)
+			return false;
+
+		long now = System.nanoTime();
+		float seconds = Math.min((now - lastFrame) / 1e9f, MAX_STEP_SECONDS);
+		lastFrame = now;
+		cursor += (long) (seconds * speed);
+
+		// Quakes up to the cursor, down to the end of the trail
+		head = timeIndex.rank(cursor + 1);
+		tail = timeIndex.rank(cursor - getTrail());
+		if (tail >= timeIndex.size())
+			playing = false;
+		return playing;
+	}
+
+	// Event time over which a quake fades out
+	private long getTrail() {
+		return (long) (FADE_SECONDS * speed);
+	}
+
+	/**
+	 * Draws the quakes shown, faded by age, which are in the map area.
+	 *
+	 * @param pg
+	 *            The graphics drawn on.
+	 * @param map
+	 *            The map.
+	 */
+	public void draw(PGraphics pg, UnfoldingMap map) {
+		MapView current = MapView.of(map);
+		if (!current.equals(view) || store.getVersion() != storeVersion) {
+			view = current;
+			storeVersion = store.getVersion();
+			viewStamp++;
+		}
+
+		long trail = getTrail();
+		long begin = System.nanoTime();
+		drawn = 0;
+
+		pg.pushStyle();
+		pg.noStroke();
+		int rank = head - 1;
+		for (; rank >= tail; rank--) {
+			if ((head - rank) % BUDGET_CHECK == 0 && System.nanoTime() - begin > FRAME_BUDGET)
+				break;
+
+			int i = timeIndex.get(rank);
+			project(i, map);
+			if (xs[i] < left || xs[i] > right || ys[i] < top || ys[i] > bottom)
+				continue;
+
+			float opacity = 255 * (1 - (float) (cursor - timeIndex.getTime(rank)) / trail);
+			EarthquakeMarker.colorDetermine(pg, EarthquakeMarker.depthClass(store.getDepth(i)), opacity);
+			// Same size as the quake markers
+			float size = 3.5f * store.getMagnitude(i);
+			pg.ellipse(xs[i], ys[i], size, size);
+			drawn++;
+		}
+		pg.popStyle();
+		skipped = rank - tail + 1;
+	}
+
+	// Projects a quake, unless it was in the current view
+	private void project(int i, UnfoldingMap map) {
+		if (i >= projectedIn.length) {
+			int capacity = Math.max(i + 1, Math.max(store.size(), 2 * projectedIn.length));
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			projectedIn = Arrays.copyOf(projectedIn, capacity);
+		}
+		if (projectedIn[i] != viewStamp) {
+			ScreenPosition pos = map.getScreenPosition(new Location(store.getLat(i), store.getLon(i)));
+			xs[i] = pos.x;
+			ys[i] = pos.y;
+			projectedIn[i] = viewStamp;
+		}
+	}
+
+	/**
+	 * @return the number of quakes drawn by the last frame.
+	 */
+	public int getDrawn() {
+		return drawn;
+	}
+
+	/**
+	 * @return the number of quakes left out of the last frame by the budget.
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+}
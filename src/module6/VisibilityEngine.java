@@ -0,0 +1,432 @@
+package module6;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/**
+ * Decides which quake and city markers are visible. Every filter of the map
+ * controls is kept as a bit mask over the markers: the ages or time window,
+ * the marker clicked on (focus) and the threat circles around it, the top N
+ * quakes and the show cities option. Changing a filter only computes its own
+ * mask again; the visible set is the AND of the masks, and only the markers
+ * whose visibility changed have their hidden flag set.
+ * <p>
+ * Ages are time windows ending at the newest quake (past hour, past day...),
+ * and the quakes of a window are found by binary search in the time index,
+ * so they do not depend on the age labels of the feed, which are only used
+ * for quakes without time. Quakes before the past month, and quakes without
+ * time whose label is no feed category, are of the older age. Any other
+ * window can be set instead of the ages.
+ * <p>
+ * Quake bits are the quake indices in the quake store, city bits are the
+ * city positions in the city list. A listener is told of every quake shown
+ * or hidden, so aggregates of the visible quakes can be kept up to date.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class VisibilityEngine {
+
+	/*
+	 * Told of every quake marker shown or hidden.
+	 */
+	public interface Listener {
+		void quakeVisibilityChanged(EarthquakeMarker quake, boolean visible);
+	}
+
+	/** Top count showing every quake */
+	public static final int ALL = Integer.MAX_VALUE;
+
+	/** Length of the age windows, by age code, in milliseconds */
+	public static final long HOUR = 3600000L, DAY = 24 * HOUR;
+	// The older age has no length: it starts with the oldest quake
+	private static final long[] AGE_SPANS = { HOUR, DAY, 7 * DAY, 30 * DAY };
+
+	// Markers by bit
+	private List<EarthquakeMarker> quakes = new ArrayList<EarthquakeMarker>();
+	private MagnitudeIndex magnitudeIndex;
+	private TimeIndex timeIndex;
+	private List<Marker> cities;
+	private LocationIndex cityIndex;
+
+	// Quakes without time, by age code
+	private BitSet[] ageBuckets = new BitSet[QuakeStore.AGE_OLDER + 1];
+	// Every quake, every city
+	private BitSet allQuakes = new BitSet(), allCities = new BitSet();
+
+	// Filter state
+	private boolean[] ageShown = new boolean[ageBuckets.length];
+	private boolean windowSet;
+	private long windowFrom, windowTo;
+	private int topCount = ALL;
+	private CommonMarker focus;
+	private boolean showCities = true;
+
+	// Masks, and whether they must be computed again
+	private BitSet ageMask = new BitSet(), focusQuakeMask, focusCityMask, topMask, cityMask;
+	private boolean ageDirty, focusDirty = true, topDirty = true, cityDirty = true;
+
+	// Visibility set on the markers
+	private BitSet visibleQuakes = new BitSet(), visibleCities = new BitSet();
+
+	private Listener listener;
+
+	/**
+	 * Construct the engine for the markers on the map, taking their current
+	 * visibility as a start.
+	 *
+	 * @param quakeMarkers
+	 *            The quake markers.
+	 * @param magnitudeIndex
+	 *            The magnitude order of the quakes, for the top N quakes.
+	 * @param timeIndex
+	 *            The time order of the quakes with a time, for the ages.
+	 * @param cityMarkers
+	 *            The city markers.
+	 * @param cityIndex
+	 *            The spatial index of the city markers.
+	 */
+	public VisibilityEngine(List<Marker> quakeMarkers, MagnitudeIndex magnitudeIndex, TimeIndex timeIndex,
+			List<Marker> cityMarkers, LocationIndex cityIndex) {
+		this.magnitudeIndex = magnitudeIndex;
+		this.timeIndex = timeIndex;
+		this.cities = cityMarkers;
+		this.cityIndex = cityIndex;
+
+		for (int a = 0; a < ageBuckets.length; a++)
+			ageBuckets[a] = new BitSet();
+		for (Marker quake : quakeMarkers)
+			addQuake((EarthquakeMarker) quake);
+
+		allCities.set(0, cities.size());
+		for (int i = 0; i < cities.size(); i++)
+			if (!cities.get(i).isHidden())
+				visibleCities.set(i);
+	}
+
+	/**
+	 * Adds a quake marker, which keeps its current visibility until the next
+	 * update. It must already be in the magnitude and time indexes. The listener is told
+	 * if it is visible.
+	 *
+	 * @param quake
+	 *            The marker to be added.
+	 */
+	public void addQuake(EarthquakeMarker quake) {
+		int i = quake.getIndex();
+		while (quakes.size() <= i)
+			quakes.add(null);
+		quakes.set(i, quake);
+
+		allQuakes.set(i);
+		setAgeBucket(quake);
+		if (!quake.isHidden()) {
+			visibleQuakes.set(i);
+			if (listener != null)
+				listener.quakeVisibilityChanged(quake, true);
+		}
+
+		focusDirty = true;
+		topDirty = true;
+	}
+
+	/**
+	 * Takes the new values of a quake marker whose quake was updated. The
+	 * indexes must already have them.
+	 *
+	 * @param quake
+	 *            The marker updated.
+	 */
+	public void updateQuake(EarthquakeMarker quake) {
+		setAgeBucket(quake);
+		focusDirty = true;
+		topDirty = true;
+	}
+
+	/**
+	 * Removes a quake marker. It is left with its current visibility.
+	 *
+	 * @param quake
+	 *            The marker to be removed.
+	 */
+	public void removeQuake(EarthquakeMarker quake) {
+		int i = quake.getIndex();
+		if (listener != null && visibleQuakes.get(i))
+			listener.quakeVisibilityChanged(quake, false);
+		quakes.set(i, null);
+		allQuakes.clear(i);
+		for (BitSet bucket : ageBuckets)
+			bucket.clear(i);
+		ageMask.clear(i);
+		visibleQuakes.clear(i);
+		ageDirty = true;
+
+		if (focus == quake)
+			focus = null;
+		focusDirty = true;
+		topDirty = true;
+	}
+
+	// The age windows may have moved with the newest quake: the age mask is
+	// computed again at the next update
+	private void setAgeBucket(EarthquakeMarker quake) {
+		int i = quake.getIndex();
+		for (BitSet bucket : ageBuckets)
+			bucket.clear(i);
+
+		byte age = quake.getAgeCode();
+		if (quake.getTime() == QuakeStore.NO_TIME)
+			ageBuckets[age >= 0 && age < QuakeStore.AGE_OLDER ? age : QuakeStore.AGE_OLDER].set(i);
+		ageDirty = true;
+	}
+
+	/**
+	 * Shows or hides the quakes of an age code.
+	 *
+	 * @param age
+	 *            The age code (see QuakeStore).
+	 * @param shown
+	 *            true if the quakes of this age are shown.
+	 */
+	public void setAgeShown(byte age, boolean shown) {
+		if (ageShown[age] != shown) {
+			ageShown[age] = shown;
+			ageDirty = true;
+		}
+	}
+
+	/**
+	 * Shows the quakes of a time window instead of the ones of the ages shown.
+	 *
+	 * @param from
+	 *            The start of the window, included, in epoch milliseconds.
+	 * @param to
+	 *            The end of the window, excluded.
+	 */
+	public void setTimeWindow(long from, long to) {
+		if (!windowSet || windowFrom != from || windowTo != to) {
+			windowSet = true;
+			windowFrom = from;
+			windowTo = to;
+			ageDirty = true;
+		}
+	}
+
+	/**
+	 * Shows the quakes of the ages shown again, instead of a time window.
+	 */
+	public void clearTimeWindow() {
+		if (windowSet) {
+			windowSet = false;
+			ageDirty = true;
+		}
+	}
+
+	/**
+	 * Limits the quakes shown to the largest ones passing the other filters.
+	 *
+	 * @param count
+	 *            The number of quakes shown, or ALL.
+	 */
+	public void setTopCount(int count) {
+		if (topCount != count) {
+			topCount = count;
+			topDirty = true;
+		}
+	}
+
+	/**
+	 * Sets the marker clicked on. A quake shows only itself and the cities
+	 * within its threat circle; a city shows only itself and the quakes whose
+	 * threat circle contains it.
+	 *
+	 * @param marker
+	 *            The marker clicked on, or null.
+	 */
+	public void setFocus(CommonMarker marker) {
+		if (focus != marker) {
+			focus = marker;
+			focusDirty = true;
+		}
+	}
+
+	/**
+	 * Shows or hides all the cities.
+	 *
+	 * @param shown
+	 *            true if the cities are shown.
+	 */
+	public void setShowCities(boolean shown) {
+		if (showCities != shown) {
+			showCities = shown;
+			cityDirty = true;
+		}
+	}
+
+	/**
+	 * Computes the masks which changed and sets the hidden flag of the markers
+	 * whose visibility changed.
+	 *
+	 * @return true if any marker was hidden or shown.
+	 */
+	public boolean update() {
+		if (ageDirty) {
+			computeAgeMask();
+			ageDirty = false;
+			topDirty = true;
+		}
+		if (focusDirty) {
+			computeFocusMasks();
+			focusDirty = false;
+			topDirty = true;
+		}
+		if (topDirty) {
+			computeTopMask();
+			topDirty = false;
+		}
+		if (cityDirty) {
+			cityMask = showCities ? allCities : new BitSet();
+			cityDirty = false;
+		}
+
+		BitSet quakeTarget;
+		if (focus instanceof EarthquakeMarker) {
+			// The quake clicked on is shown whatever the filters
+			quakeTarget = focusQuakeMask;
+		} else {
+			quakeTarget = (BitSet) ageMask.clone();
+			quakeTarget.and(focusQuakeMask);
+			quakeTarget.and(topMask);
+		}
+		BitSet cityTarget = (BitSet) focusCityMask.clone();
+		cityTarget.and(cityMask);
+
+		boolean changed = apply(quakes, visibleQuakes, quakeTarget, listener)
+				| apply(cities, visibleCities, cityTarget, null);
+		visibleQuakes = quakeTarget;
+		visibleCities = cityTarget;
+		return changed;
+	}
+
+	// The quakes of the time window, or of the ages shown
+	private void computeAgeMask() {
+		ageMask = new BitSet();
+		if (windowSet) {
+			timeIndex.range(windowFrom, windowTo, ageMask);
+			return;
+		}
+
+		long latest = getLatestTime();
+		for (int a = 0; a < ageBuckets.length; a++) {
+			if (!ageShown[a])
+				continue;
+			ageMask.or(ageBuckets[a]);
+			if (latest != QuakeStore.NO_TIME)
+				timeIndex.range(a < AGE_SPANS.length ? latest - AGE_SPANS[a] : Long.MIN_VALUE,
+						a == 0 ? Long.MAX_VALUE : latest - AGE_SPANS[a - 1], ageMask);
+		}
+	}
+
+	private void computeFocusMasks() {
+		if (focus instanceof EarthquakeMarker) {
+			EarthquakeMarker quake = (EarthquakeMarker) focus;
+			focusQuakeMask = new BitSet();
+			focusQuakeMask.set(quake.getIndex());
+			focusCityMask = new BitSet();
+			cityIndex.query(quake.getLocation(), quake.threatCircle(), focusCityMask);
+		} else if (focus instanceof CityMarker) {
+			focusQuakeMask = new BitSet();
+			for (int i = allQuakes.nextSetBit(0); i >= 0; i = allQuakes.nextSetBit(i + 1)) {
+				EarthquakeMarker quake = quakes.get(i);
+				if (quake.getDistanceTo(focus.getLocation()) <= quake.threatCircle())
+					focusQuakeMask.set(i);
+			}
+			focusCityMask = new BitSet();
+			focusCityMask.set(cities.indexOf(focus));
+		} else {
+			focusQuakeMask = allQuakes;
+			focusCityMask = allCities;
+		}
+	}
+
+	// The largest quakes passing the age and focus filters
+	private void computeTopMask() {
+		if (topCount == ALL) {
+			topMask = allQuakes;
+			return;
+		}
+		BitSet candidates = (BitSet) ageMask.clone();
+		candidates.and(focusQuakeMask);
+		topMask = new BitSet();
+		magnitudeIndex.topK(topCount, candidates, topMask);
+	}
+
+	// Flips the hidden flag of the markers whose bit differs
+	private static boolean apply(List<? extends Marker> markers, BitSet current, BitSet target, Listener listener) {
+		BitSet changed = (BitSet) current.clone();
+		changed.xor(target);
+		for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+			markers.get(i).setHidden(!target.get(i));
+			if (listener != null)
+				listener.quakeVisibilityChanged((EarthquakeMarker) markers.get(i), target.get(i));
+		}
+		return !changed.isEmpty();
+	}
+
+	/**
+	 * Sets the listener told of the quakes shown or hidden. It is first told
+	 * of every quake visible now.
+	 *
+	 * @param listener
+	 *            The listener.
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+		for (int i = visibleQuakes.nextSetBit(0); i >= 0; i = visibleQuakes.nextSetBit(i + 1))
+			listener.quakeVisibilityChanged(quakes.get(i), true);
+	}
+
+	/**
+	 * @return the time of the newest quake, or QuakeStore.NO_TIME if no quake
+	 *         has a time.
+	 */
+	public long getLatestTime() {
+		return timeIndex.size() == 0 ? QuakeStore.NO_TIME : timeIndex.getTime(timeIndex.size() - 1);
+	}
+
+	/**
+	 * @param quake
+	 *            A quake marker.
+	 * @return the age code of the quake from its time and the newest quake,
+	 *         or the one of its feed category if it has no time; AGE_OLDER
+	 *         before the past month.
+	 */
+	public byte getAgeCode(EarthquakeMarker quake) {
+		long latest = getLatestTime();
+		if (quake.getTime() == QuakeStore.NO_TIME || latest == QuakeStore.NO_TIME)
+			return quake.getAgeCode();
+		for (byte a = 0; a < AGE_SPANS.length; a++)
+			if (latest - quake.getTime() <= AGE_SPANS[a])
+				return a;
+		return QuakeStore.AGE_OLDER;
+	}
+
+	/**
+	 * @param index
+	 *            The quake index in the store.
+	 * @return the marker of the quake, or null if it was removed.
+	 */
+	public EarthquakeMarker getQuake(int index) {
+		return index < quakes.size() ? quakes.get(index) : null;
+	}
+
+	/**
+	 * @return the quakes currently visible, by quake index. Not to be
+	 *         modified.
+	 */
+	public BitSet getVisibleQuakes() {
+		return visibleQuakes;
+	}
+}
@@ -0,0 +1,142 @@
+package parsing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+/**
+ * The distinct events of several earthquake feeds, by feed id. Feeds of the
+ * same source overlap (the past hour is in the past day, which is in the past
+ * week...), so the same event is read several times, maybe in different
+ * revisions: only the newest revision of each id is kept, by its "updated"
+ * time, and the events keep the order in which their ids were first offered.
+ * <p>
+ * The ids are found in an open-addressing hash table with linear probing,
+ * holding the id and the position of its event: no entry object is created
+ * per row, and a duplicate row costs one probe sequence.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class EventIndex {
+
+	// Slots are free while their id is null; the table is at most half full
+	private String[] ids;
+	private int[] positions;
+	private final List<PointFeature> events;
+	private int rows;
+
+	/*
+	 * @param expected - number of distinct events expected
+	 */
+	public EventIndex(int expected) {
+		int capacity = 16;
+		while (capacity < 2 * expected)
+			capacity <<= 1;
+		ids = new String[capacity];
+		positions = new int[capacity];
+		events = new ArrayList<PointFeature>(expected);
+	}
+
+	/*
+	 * Adds a feed row: a new event, or a revision of an event already there,
+	 * which replaces it if it is newer. Rows without an id cannot be matched
+	 * and are always added.
+	 *
+	 * @param feature - earthquake read from a feed
+	 * @return true if the row was added or replaced an older revision
+	 */
+	public boolean offer(PointFeature feature) {
+		rows++;
+		String id = feature.getId();
+		if (id == null) {
+			events.add(feature);
+			return true;
+		}
+
+		int mask = ids.length - 1;
+		int slot = spread(id.hashCode()) & mask;
+		while (ids[slot] != null) {
+			if (ids[slot].equals(id)) {
+				if (!isNewer(feature, events.get(positions[slot])))
+					return false;
+				events.set(positions[slot], feature);
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		ids[slot] = id;
+		positions[slot] = events.size();
+		events.add(feature);
+		if (2 * events.size() > ids.length)
+			grow();
+		return true;
+	}
+
+	/*
+	 * @param id - feed id of an event
+	 * @return the newest revision of the event, or null if it was not offered
+	 */
+	public PointFeature get(String id) {
+		int mask = ids.length - 1;
+		for (int slot = spread(id.hashCode()) & mask; ids[slot] != null; slot = (slot + 1) & mask)
+			if (ids[slot].equals(id))
+				return events.get(positions[slot]);
+		return null;
+	}
+
+	/*
+	 * @return the distinct events, in order of first appearance
+	 */
+	public List<PointFeature> getEvents() {
+		return events;
+	}
+
+	/*
+	 * @return the number of distinct events
+	 */
+	public int size() {
+		return events.size();
+	}
+
+	/*
+	 * @return the number of rows offered, duplicates included
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	// A revision without an update time never replaces one
+	private static boolean isNewer(PointFeature feature, PointFeature than) {
+		Object updated = feature.getProperty("updated");
+		Object previous = than.getProperty("updated");
+		if (!(updated instanceof Long))
+			return false;
+		return !(previous instanceof Long) || (Long) updated > (Long) previous;
+	}
+
+	private void grow() {
+		String[] oldIds = ids;
+		int[] oldPositions = positions;
+		ids = new String[2 * oldIds.length];
+		positions = new int[ids.length];
+
+		int mask = ids.length - 1;
+		for (int i = 0; i < oldIds.length; i++) {
+			if (oldIds[i] == null)
+				continue;
+			int slot = spread(oldIds[i].hashCode()) & mask;
+			while (ids[slot] != null)
+				slot = (slot + 1) & mask;
+			ids[slot] = oldIds[i];
+			positions[slot] = oldPositions[i];
+		}
+	}
+
+	// Mixes the high bits of the hash into the low ones used by the mask
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
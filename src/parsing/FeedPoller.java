@@ -0,0 +1,282 @@
+package parsing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+/**
+ * Polls a GeoRSS earthquake feed in a background thread and finds what
+ * changed since the last poll. A feed at a URL is requested with conditional
+ * requests (ETag and If-Modified-Since), so an unchanged feed is not
+ * downloaded again, and asks for a gzip response; a local feed file is read
+ * again when its modification time changed.
+ * <p>
+ * Entries are matched by their feed id: the changes of a poll are the
+ * entries inserted, the entries whose values changed and the ids removed.
+ * They are queued for the drawing thread, which takes them with
+ * nextChanges. Entries without an id are ignored. Polls failing and working
+ * again are queued as messages, taken with nextMessage, so the poller thread
+ * never prints.
+ *
+ * @author Luis Vsquez-Pea
+ */
+public class FeedPoller {
+
+	/*
+	 * Changes of the feed found by one poll.
+	 */
+	public static class Changes {
+		public final List<PointFeature> inserted = new ArrayList<PointFeature>();
+		public final List<PointFeature> updated = new ArrayList<PointFeature>();
+		public final List<String> removed = new ArrayList<String>();
+
+		public boolean isEmpty() {
+			return inserted.isEmpty() && updated.isEmpty() && removed.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return inserted.size() + " inserted, " + updated.size() + " updated, " + removed.size() + " removed";
+		}
+	}
+
+	private static final int CONNECT_TIMEOUT = 10000;
+	private static final int READ_TIMEOUT = 30000;
+
+	private final String source;
+	private final long intervalSeconds;
+
+	// Values of every entry of the last poll, by id. Only used by the
+	// polling thread once started
+	private Map<String, String> known = new HashMap<String, String>();
+	// Validators of the last response, or modification time of the file read
+	private String etag, lastModified;
+	private long fileModified;
+	private boolean failing;
+
+	private final ConcurrentLinkedQueue<Changes> pending = new ConcurrentLinkedQueue<Changes>();
+	private final ConcurrentLinkedQueue<String> messages = new ConcurrentLinkedQueue<String>();
+	private ScheduledExecutorService executor;
+
+	/*
+	 * A local feed file is taken as read when the poller is constructed: the
+	 * first poll only reads it if it was modified since.
+	 *
+	 * @param source - URL of the feed (with a scheme, e.g. https://), or path
+	 * of a local feed file
+	 * @param intervalSeconds - time between the end of a poll and the next
+	 */
+	public FeedPoller(String source, long intervalSeconds) {
+		this.source = source;
+		this.intervalSeconds = intervalSeconds;
+		if (!isURL(source))
+			fileModified = new File(source).lastModified();
+	}
+
+	private static boolean isURL(String source) {
+		return source.contains("://");
+	}
+
+	/*
+	 * Records an entry already loaded, so the first poll only reports what
+	 * changed since. To be called before start.
+	 *
+	 * @param feature - earthquake read from the feed
+	 */
+	public void seed(PointFeature feature) {
+		if (feature.getId() != null)
+			known.put(feature.getId(), signature(feature));
+	}
+
+	/*
+	 * Starts polling in a daemon thread.
+	 */
+	public synchronized void start() {
+		if (executor != null)
+			return;
+
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "feed-poller");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					pollOnce();
+					if (failing)
+						messages.add("Feed polling of " + source + " works again");
+					failing = false;
+				} catch (IOException e) {
+					// Report once until it works again
+					if (!failing)
+						messages.add("Feed polling of " + source + " failed: " + e.getMessage());
+					failing = true;
+				}
+			}
+		}, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/*
+	 * Stops polling. Changes already queued can still be taken.
+	 */
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/*
+	 * @return the oldest changes not taken yet, or null if there are none
+	 */
+	public Changes nextChanges() {
+		return pending.poll();
+	}
+
+	/*
+	 * @return the oldest message about the polling (failing, or working
+	 * again) not taken yet, or null if there are none
+	 */
+	public String nextMessage() {
+		return messages.poll();
+	}
+
+	/*
+	 * Polls the feed once in the calling thread, and queues its changes.
+	 *
+	 * @return true if the feed was read, false if it was not modified
+	 */
+	public boolean pollOnce() throws IOException {
+		if (!isURL(source))
+			return pollFile();
+
+		HttpURLConnection connection = (HttpURLConnection) new URL(source).openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT);
+		connection.setReadTimeout(READ_TIMEOUT);
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		if (etag != null)
+			connection.setRequestProperty("If-None-Match", etag);
+		if (lastModified != null)
+			connection.setRequestProperty("If-Modified-Since", lastModified);
+
+		try {
+			int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED)
+				return false;
+			if (status != HttpURLConnection.HTTP_OK)
+				throw new IOException("HTTP " + status + " " + connection.getResponseMessage());
+
+			InputStream input = connection.getInputStream();
+			if ("gzip".equalsIgnoreCase(connection.getContentEncoding()))
+				input = new GZIPInputStream(input);
+			Map<String, PointFeature> current = read(input);
+
+			// The validators are only kept once the whole feed was read
+			etag = connection.getHeaderField("ETag");
+			lastModified = connection.getHeaderField("Last-Modified");
+
+			queue(diff(current));
+			return true;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	// Reads a local feed file again if it was modified since the last read
+	private boolean pollFile() throws IOException {
+		File file = new File(source);
+		long modified = file.lastModified();
+		if (modified == 0)
+			throw new IOException("File not found");
+		if (modified == fileModified)
+			return false;
+
+		InputStream input = new FileInputStream(file);
+		if (source.endsWith(".gz"))
+			input = new GZIPInputStream(input);
+		Map<String, PointFeature> current = read(input);
+
+		fileModified = modified;
+		queue(diff(current));
+		return true;
+	}
+
+	// Reads the entries of a feed by id, and closes the stream
+	private static Map<String, PointFeature> read(InputStream input) throws IOException {
+		final Map<String, PointFeature> current = new HashMap<String, PointFeature>();
+		try {
+			ParseFeed.streamEarthquake(input, new ParseFeed.FeatureHandler() {
+				public void handle(PointFeature feature) {
+					if (feature.getId() != null)
+						current.put(feature.getId(), feature);
+				}
+			});
+		} catch (XMLStreamException e) {
+			throw new IOException("Feed could not be parsed: " + e.getMessage(), e);
+		} catch (RuntimeException e) {
+			// A malformed entry (missing elevation, title without magnitude)
+			// fails the poll like a malformed document, instead of ending
+			// the polling thread
+			throw new IOException("Feed could not be parsed: " + e, e);
+		} finally {
+			input.close();
+		}
+		return current;
+	}
+
+	private void queue(Changes changes) {
+		if (!changes.isEmpty())
+			pending.add(changes);
+	}
+
+	// Compares the entries of a poll to the ones of the last poll, and keeps
+	// them for the next one
+	private Changes diff(Map<String, PointFeature> current) {
+		Changes changes = new Changes();
+		Map<String, String> signatures = new HashMap<String, String>(current.size() * 2);
+
+		for (Map.Entry<String, PointFeature> entry : current.entrySet()) {
+			String signature = signature(entry.getValue());
+			String previous = known.get(entry.getKey());
+			if (previous == null)
+				changes.inserted.add(entry.getValue());
+			else if (!previous.equals(signature))
+				changes.updated.add(entry.getValue());
+			signatures.put(entry.getKey(), signature);
+		}
+		for (String id : known.keySet())
+			if (!current.containsKey(id))
+				changes.removed.add(id);
+
+		known = signatures;
+		return changes;
+	}
+
+	// Every value of an entry used by the map, and its revision time
+	private static String signature(PointFeature feature) {
+		return feature.getLocation().getLat() + " " + feature.getLocation().getLon() + "|"
+				+ feature.getProperty("title") + "|" + feature.getProperty("depth") + "|"
+				+ feature.getProperty("age") + "|" + feature.getProperty("time") + "|"
+				+ feature.getProperty("updated");
+	}
+}
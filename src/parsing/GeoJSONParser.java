@@ -0,0 +1,286 @@
+package parsing;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.Feature.FeatureType;
+import de.fhpotsdam.unfolding.data.MultiFeature;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.data.ShapeFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+/*
+ * Reads a GeoJSON FeatureCollection into Unfolding features without a
+ * PApplet, for use outside a sketch (see module6.QuakeBatch). It gives the
+ * same features as GeoJSONReader for the geometries used by the data files:
+ * Point, LineString, Polygon (outer ring), and their Multi forms as
+ * MultiFeatures. Property values are kept as String, Integer, Double,
+ * Boolean or null.
+ */
+public class GeoJSONParser {
+
+	private final Reader reader;
+	private int next;
+
+	private GeoJSONParser(Reader reader) throws IOException {
+		this.reader = reader;
+		next = reader.read();
+	}
+
+
+	/*
+	 * Reads the features of a GeoJSON file.
+	 *
+	 * @param file - GeoJSON file, in UTF-8
+	 * @return the features, in file order
+	 */
+	public static List<Feature> parse(File file) throws IOException {
+		Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			return parse(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+
+	/*
+	 * Reads the features of a GeoJSON document. The reader is not closed.
+	 *
+	 * @param reader - reader of the document
+	 * @return the features, in document order
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<Feature> parse(Reader reader) throws IOException {
+		Object document = new GeoJSONParser(reader).readValue();
+		if (!(document instanceof Map))
+			throw new IOException("GeoJSON document is not an object");
+
+		List<Feature> features = new ArrayList<Feature>();
+		Map<String, Object> root = (Map<String, Object>) document;
+		if ("Feature".equals(root.get("type"))) {
+			features.add(toFeature(root));
+		} else if (root.get("features") instanceof List) {
+			for (Object feature : (List<Object>) root.get("features"))
+				features.add(toFeature((Map<String, Object>) feature));
+		}
+		return features;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Feature toFeature(Map<String, Object> json) throws IOException {
+		Feature feature = toGeometry((Map<String, Object>) json.get("geometry"));
+		if (json.get("id") != null)
+			feature.setId(json.get("id").toString());
+		HashMap<String, Object> properties = new HashMap<String, Object>();
+		if (json.get("properties") instanceof Map)
+			properties.putAll((Map<String, Object>) json.get("properties"));
+		feature.setProperties(properties);
+		return feature;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Feature toGeometry(Map<String, Object> geometry) throws IOException {
+		if (geometry == null)
+			throw new IOException("Feature without geometry");
+		String type = (String) geometry.get("type");
+		List<Object> coords = (List<Object>) geometry.get("coordinates");
+
+		if ("Point".equals(type))
+			return new PointFeature(toLocation(coords));
+		if ("LineString".equals(type))
+			return toShape(FeatureType.LINES, coords);
+		if ("Polygon".equals(type))
+			return toShape(FeatureType.POLYGON, (List<Object>) coords.get(0));
+
+		MultiFeature multi = new MultiFeature();
+		if ("MultiPoint".equals(type)) {
+			for (Object point : coords)
+				multi.addFeature(new PointFeature(toLocation((List<Object>) point)));
+		} else if ("MultiLineString".equals(type)) {
+			for (Object line : coords)
+				multi.addFeature(toShape(FeatureType.LINES, (List<Object>) line));
+		} else if ("MultiPolygon".equals(type)) {
+			for (Object polygon : coords)
+				multi.addFeature(toShape(FeatureType.POLYGON, (List<Object>) ((List<Object>) polygon).get(0)));
+		} else {
+			throw new IOException("Unsupported geometry type " + type);
+		}
+		return multi;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ShapeFeature toShape(FeatureType type, List<Object> coords) {
+		ShapeFeature shape = new ShapeFeature(type);
+		for (Object point : coords)
+			shape.addLocation(toLocation((List<Object>) point));
+		return shape;
+	}
+
+	// GeoJSON positions are longitude first
+	private static Location toLocation(List<Object> position) {
+		return new Location(((Number) position.get(1)).floatValue(), ((Number) position.get(0)).floatValue());
+	}
+
+	// Minimal JSON reader: objects become maps, arrays lists
+
+	private Object readValue() throws IOException {
+		skipSpace();
+		switch (next) {
+		case '{':
+			return readObject();
+		case '[':
+			return readArray();
+		case '"':
+			return readString();
+		case 't':
+			expectWord("true");
+			return Boolean.TRUE;
+		case 'f':
+			expectWord("false");
+			return Boolean.FALSE;
+		case 'n':
+			expectWord("null");
+			return null;
+		default:
+			return readNumber();
+		}
+	}
+
+	private Map<String, Object> readObject() throws IOException {
+		Map<String, Object> object = new LinkedHashMap<String, Object>();
+		advance();
+		skipSpace();
+		if (next == '}') {
+			advance();
+			return object;
+		}
+		while (true) {
+			skipSpace();
+			String key = readString();
+			skipSpace();
+			expect(':');
+			object.put(key, readValue());
+			skipSpace();
+			if (next == '}') {
+				advance();
+				return object;
+			}
+			expect(',');
+		}
+	}
+
+	private List<Object> readArray() throws IOException {
+		List<Object> array = new ArrayList<Object>();
+		advance();
+		skipSpace();
+		if (next == ']') {
+			advance();
+			return array;
+		}
+		while (true) {
+			array.add(readValue());
+			skipSpace();
+			if (next == ']') {
+				advance();
+				return array;
+			}
+			expect(',');
+		}
+	}
+
+	private String readString() throws IOException {
+		expect('"');
+		StringBuilder s = new StringBuilder();
+		while (next != '"') {
+			if (next < 0)
+				throw new IOException("Unterminated JSON string");
+			if (next == '\\') {
+				advance();
+				switch (next) {
+				case 'b':
+					s.append('\b');
+					break;
+				case 'f':
+					s.append('\f');
+					break;
+				case 'n':
+					s.append('\n');
+					break;
+				case 'r':
+					s.append('\r');
+					break;
+				case 't':
+					s.append('\t');
+					break;
+				case 'u':
+					char[] hex = new char[4];
+					for (int i = 0; i < 4; i++) {
+						advance();
+						hex[i] = (char) next;
+					}
+					s.append((char) Integer.parseInt(new String(hex), 16));
+					break;
+				default:
+					s.append((char) next);
+				}
+			} else {
+				s.append((char) next);
+			}
+			advance();
+		}
+		advance();
+		return s.toString();
+	}
+
+	private Object readNumber() throws IOException {
+		StringBuilder s = new StringBuilder();
+		while (next == '-' || next == '+' || next == '.' || next == 'e' || next == 'E'
+				|| (next >= '0' && next <= '9')) {
+			s.append((char) next);
+			advance();
+		}
+		if (s.length() == 0)
+			throw new IOException("Unexpected JSON character " + (next < 0 ? "end of input" : "'" + (char) next + "'"));
+
+		String number = s.toString();
+		if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+			long value = Long.parseLong(number);
+			if (value == (int) value)
+				return (int) value;
+		}
+		return Double.parseDouble(number);
+	}
+
+	private void expectWord(String word) throws IOException {
+		for (int i = 0; i < word.length(); i++)
+			expect(word.charAt(i));
+	}
+
+	private void expect(char c) throws IOException {
+		if (next != c)
+			throw new IOException("Expected '" + c + "' in JSON, found "
+					+ (next < 0 ? "end of input" : "'" + (char) next + "'"));
+		advance();
+	}
+
+	private void skipSpace() throws IOException {
+		while (next == ' ' || next == '\n' || next == '\r' || next == '\t')
+			advance();
+	}
+
+	private void advance() throws IOException {
+		next = reader.read();
+	}
+}
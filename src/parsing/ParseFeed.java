@@ -1,10 +1,22 @@
 package parsing;
 
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import de.fhpotsdam.unfolding.data.Feature;
 import de.fhpotsdam.unfolding.data.PointFeature;
 import de.fhpotsdam.unfolding.data.ShapeFeature;
@@ -14,70 +26,331 @@ import processing.data.XML;
 
 public class ParseFeed {
 
+	// Event time in the summary of the USGS entries, e.g.
+	// "<dt>Time</dt><dd>2015-08-07 19:43:52 UTC</dd>"
+	private static final String SUMMARY_TIME = "<dt>Time</dt><dd>";
+	private static final DateTimeFormatter SUMMARY_TIME_FORMAT = DateTimeFormatter
+			.ofPattern("yyyy-MM-dd HH:mm:ss 'UTC'");
+
+	/*
+	 * Receives the earthquakes of a feed one at a time, as soon as each
+	 * <entry> has been read by the streaming parser.
+	 */
+	public interface FeatureHandler {
+		void handle(PointFeature feature);
+	}
+
 
 	/*
 	 * This method is to parse a GeoRSS feed corresponding to earthquakes around
-	 * the globe.
+	 * the globe. The feed is read with the streaming parser; if it cannot be
+	 * read that way the DOM parser is used as a fallback. Both give the same
+	 * list of features.
 	 * 
 	 * @param p - PApplet being used
 	 * @param fileName - file name or URL for data source
 	 */
 	public static List<PointFeature> parseEarthquake(PApplet p, String fileName) {
+		final List<PointFeature> features = new ArrayList<PointFeature>();
+
+		boolean streamed = streamEarthquake(p, fileName, new FeatureHandler() {
+			public void handle(PointFeature feature) {
+				features.add(feature);
+			}
+		});
+
+		if (!streamed)
+			return parseEarthquakeDOM(p, fileName);
+
+		return features;
+	}
+
+
+	/*
+	 * Merges the earthquakes of overlapping feeds by event id, in an
+	 * open-addressing index: each event is kept once, in its newest revision
+	 * by <updated> time, so the markers built from the result scale with the
+	 * number of distinct events and not of feed rows. Entries without an id
+	 * are all kept.
+	 * 
+	 * @param feeds - earthquakes of each feed, in feed order
+	 * @return the distinct earthquakes, in order of first appearance
+	 */
+	public static List<PointFeature> mergeEarthquakes(List<List<PointFeature>> feeds) {
+		// The largest feed is a good guess of the number of distinct events
+		int expected = 0;
+		for (List<PointFeature> feed : feeds)
+			expected = Math.max(expected, feed.size());
+
+		EventIndex index = new EventIndex(expected);
+		for (List<PointFeature> feed : feeds)
+			for (PointFeature feature : feed)
+				index.offer(feature);
+		return index.getEvents();
+	}
+
+
+	/*
+	 * Streams a GeoRSS earthquake feed, passing every feature to the handler
+	 * as soon as its <entry> is closed. Only the current entry is kept in
+	 * memory, whatever the feed size.
+	 * 
+	 * @param p - PApplet being used
+	 * @param fileName - file name or URL for data source
+	 * @param handler - receives every earthquake read
+	 * @return false if the feed could not be streamed (features already
+	 * handled are not taken back)
+	 */
+	public static boolean streamEarthquake(PApplet p, String fileName, FeatureHandler handler) {
+		InputStream input = p.createInput(fileName);
+		if (input == null)
+			return false;
+
+		try {
+			streamEarthquake(input, handler);
+			return true;
+		} catch (XMLStreamException e) {
+			System.err.println("Streaming parser failed on " + fileName + ": " + e.getMessage());
+			return false;
+		} finally {
+			try {
+				input.close();
+			} catch (IOException e) {
+				// nothing left to read
+			}
+		}
+	}
+
+
+	/*
+	 * Streams a GeoRSS earthquake feed from an open input stream. The stream
+	 * is not closed.
+	 * 
+	 * @param input - stream with the feed contents
+	 * @param handler - receives every earthquake read
+	 */
+	public static void streamEarthquake(InputStream input, FeatureHandler handler) throws XMLStreamException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+
+		XMLStreamReader reader = factory.createXMLStreamReader(input);
+
+		// Values of the entry being read; only direct children of <entry>
+		// count, as with XML.getChild in the DOM parser
+		int depth = 0;
+		String idStr = null, pointStr = null, titleStr = null, elevStr = null, ageStr = null, updatedStr = null,
+				summaryStr = null;
+		String childName = null;
+		StringBuilder text = new StringBuilder();
+
+		try {
+			while (reader.hasNext()) {
+				int event = reader.next();
+
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = qualifiedName(reader);
+					if (depth == 0) {
+						if ("entry".equals(name)) {
+							depth = 1;
+							idStr = pointStr = titleStr = elevStr = ageStr = updatedStr = summaryStr = null;
+						}
+						continue;
+					}
+
+					if (depth == 1) {
+						childName = name;
+						text.setLength(0);
+						if ("category".equals(name) && "Age".equals(reader.getAttributeValue(null, "label")))
+							ageStr = reader.getAttributeValue(null, "term");
+					}
+					depth++;
+				} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+					if (depth == 2)
+						text.append(reader.getText());
+				} else if (event == XMLStreamConstants.END_ELEMENT && depth > 0) {
+					depth--;
+
+					if (depth == 1) {
+						// first child with a given name wins
+						if ("id".equals(childName) && idStr == null)
+							idStr = text.toString();
+						else if ("georss:point".equals(childName) && pointStr == null)
+							pointStr = text.toString();
+						else if ("title".equals(childName) && titleStr == null)
+							titleStr = text.toString();
+						else if ("georss:elev".equals(childName) && elevStr == null)
+							elevStr = text.toString();
+						else if ("updated".equals(childName) && updatedStr == null)
+							updatedStr = text.toString();
+						else if ("summary".equals(childName) && summaryStr == null)
+							summaryStr = text.toString();
+						childName = null;
+					} else if (depth == 0) {
+						// </entry>: emit the feature if it has a location
+						Location location = toLocation(pointStr);
+						if (location != null)
+							handler.handle(createEarthquake(location, idStr, titleStr, elevStr, ageStr, updatedStr,
+									summaryStr));
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+
+	/*
+	 * Name of the current element including its prefix, e.g. "georss:point",
+	 * matching the names used by the DOM parser.
+	 */
+	private static String qualifiedName(XMLStreamReader reader) {
+		String prefix = reader.getPrefix();
+		if (prefix == null || prefix.isEmpty())
+			return reader.getLocalName();
+		return prefix + ":" + reader.getLocalName();
+	}
+
+
+	/*
+	 * This method is to parse a GeoRSS feed corresponding to earthquakes around
+	 * the globe, building the whole XML document in memory first.
+	 * 
+	 * @param p - PApplet being used
+	 * @param fileName - file name or URL for data source
+	 */
+	public static List<PointFeature> parseEarthquakeDOM(PApplet p, String fileName) {
 		List<PointFeature> features = new ArrayList<PointFeature>();
 
 		XML rss = p.loadXML(fileName);
 		// Get all items
 		XML[] itemXML = rss.getChildren("entry");
-		PointFeature point;
 		
 		for (int i = 0; i < itemXML.length; i++) {
 			
 				// get location and create feature
 				Location location = getLocationFromPoint(itemXML[i]);
 				
-				// if successful create PointFeature and add to list
-				if( location != null) {
-					point = new PointFeature(location);
-					features.add(point);
-				}
-				else {
+				// if not successful skip this entry
+				if (location == null) {
 					continue;
 				}
 
-				// Sets title if existing
-				String titleStr = getStringVal(itemXML[i], "title");
-				if (titleStr != null) {
-					point.putProperty("title", titleStr);
-					// get magnitude from title
-					point.putProperty("magnitude", Float.parseFloat(titleStr.substring(2, 5)));
-				}
-
-				// Sets depth(elevation) if existing
-				float depthVal = getFloatVal(itemXML[i], "georss:elev");
-				
-				// NOT SURE ABOUT CHECKING ERR CONDITION BECAUSE 0 COULD BE VALID?
-				// get one decimal place when converting to km
-				int interVal = (int)(depthVal/100);
-				depthVal = (float) interVal/10;
-				point.putProperty("depth", Math.abs((depthVal)));
-				
-
 				// Sets age if existing
+				String ageStr = null;
 				XML[] catXML = itemXML[i].getChildren("category");
 				for (int c = 0; c < catXML.length; c++) {
 					String label = catXML[c].getString("label");
 					if ("Age".equals(label)) {
-						String ageStr = catXML[c].getString("term");
-						point.putProperty("age", ageStr);
+						ageStr = catXML[c].getString("term");
 					}
 				}
-		
 
+				features.add(createEarthquake(location, getStringVal(itemXML[i], "id"),
+						getStringVal(itemXML[i], "title"), getStringVal(itemXML[i], "georss:elev"), ageStr,
+						getStringVal(itemXML[i], "updated"), getStringVal(itemXML[i], "summary")));
 			}
 		
 			return features;
 		}
 
+
+	/*
+	 * Creates the feature of an earthquake from the raw entry values. Shared
+	 * by the streaming and the DOM parsers, so both give the same output.
+	 * 
+	 * @param location - location of the earthquake
+	 * @param idStr - content of <id>, the event id of the feed, or null
+	 * @param titleStr - content of <title>, or null
+	 * @param elevStr - content of <georss:elev> in meters
+	 * @param ageStr - term of the "Age" category, or null
+	 * @param updatedStr - content of <updated>, an RFC 3339 time, or null
+	 * @param summaryStr - content of <summary>, with the event time, or null
+	 */
+	private static PointFeature createEarthquake(Location location, String idStr, String titleStr, String elevStr,
+			String ageStr, String updatedStr, String summaryStr) {
+		PointFeature point = new PointFeature(location);
+
+		// Sets the feed id of the event
+		point.setId(idStr);
+
+		// Sets title if existing
+		if (titleStr != null) {
+			point.putProperty("title", titleStr);
+			// get magnitude from title
+			point.putProperty("magnitude", Float.parseFloat(titleStr.substring(2, 5)));
+		}
+
+		// Sets depth(elevation)
+		float depthVal = Float.parseFloat(elevStr);
+		
+		// NOT SURE ABOUT CHECKING ERR CONDITION BECAUSE 0 COULD BE VALID?
+		// get one decimal place when converting to km
+		int interVal = (int)(depthVal/100);
+		depthVal = (float) interVal/10;
+		point.putProperty("depth", Math.abs((depthVal)));
+
+		// Sets age if existing
+		if (ageStr != null) {
+			point.putProperty("age", ageStr);
+		}
+
+		// Sets the time of the revision, in epoch milliseconds, if readable
+		Long updated = toEpochMillis(updatedStr);
+		if (updated != null) {
+			point.putProperty("updated", updated);
+		}
+
+		// Sets the event time in epoch milliseconds, from the summary, or
+		// the revision time for feeds without one
+		Long time = toEventMillis(summaryStr);
+		if (time == null)
+			time = updated;
+		if (time != null) {
+			point.putProperty("time", time);
+		}
+
+		return point;
+	}
+
+
+	/*
+	 * Finds the event time in the summary of a USGS entry.
+	 * 
+	 * @return the time in epoch milliseconds, or null if missing or invalid
+	 */
+	private static Long toEventMillis(String summaryStr) {
+		if (summaryStr == null)
+			return null;
+		int begin = summaryStr.indexOf(SUMMARY_TIME);
+		int end = begin < 0 ? -1 : summaryStr.indexOf("</dd>", begin);
+		if (end < 0)
+			return null;
+		try {
+			return LocalDateTime.parse(summaryStr.substring(begin + SUMMARY_TIME.length(), end).trim(),
+					SUMMARY_TIME_FORMAT).toInstant(ZoneOffset.UTC).toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+
+	/*
+	 * Converts an RFC 3339 time such as "2015-08-07T19:51:24.915Z".
+	 * 
+	 * @return the time in epoch milliseconds, or null if missing or invalid
+	 */
+	private static Long toEpochMillis(String timeStr) {
+		if (timeStr == null)
+			return null;
+		try {
+			return OffsetDateTime.parse(timeStr.trim()).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
 	
 	/*
 	 * Gets location from georss:point tag
@@ -87,13 +360,20 @@ public class ParseFeed {
 	 * @return Location object corresponding to point
 	 */
 	private static Location getLocationFromPoint(XML itemXML) {
+		return toLocation(getStringVal(itemXML, "georss:point"));
+	}	
+
+	/*
+	 * Gets location from the "lat lon" content of a georss:point tag
+	 * 
+	 * @return Location object corresponding to point, or null if missing
+	 */
+	private static Location toLocation(String pointStr) {
 		// set loc to null in case of failure
 		Location loc = null;
-		XML pointXML = itemXML.getChild("georss:point");
 		
 		// set location if existing
-		if (pointXML != null && pointXML.getContent() != null) {
-			String pointStr = pointXML.getContent();
+		if (pointStr != null) {
 			String[] latLon = pointStr.split(" ");
 			float lat = Float.valueOf(latLon[0]);
 			float lon = Float.valueOf(latLon[1]);
@@ -102,7 +382,7 @@ public class ParseFeed {
 		}
 		
 		return loc;
-	}	
+	}
 	
 	/*
 	 * Get String content from child node.
@@ -120,13 +400,6 @@ public class ParseFeed {
 		return str;
 	}
 	
-	/*
-	 * Get float value from child node
-	 */
-	private static float getFloatVal(XML itemXML, String tagName) {
-		return Float.parseFloat(getStringVal(itemXML, tagName));
-	}
-	
 
 	/*
 	 * This method is to parse a file containing airport information.  